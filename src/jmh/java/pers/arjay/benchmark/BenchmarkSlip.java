@@ -0,0 +1,60 @@
+package pers.arjay.benchmark;
+
+import pers.arjay.model.Slip;
+
+/**
+ * benchmark 用的投注單
+ *
+ * @author jay.kuo
+ */
+public class BenchmarkSlip implements Slip {
+
+	private final String betDetail;
+
+	private final long betCounts;
+
+	private final long betAmount;
+
+	private final int multiple;
+
+	private final int salesUnit;
+
+	public BenchmarkSlip(String betDetail, long betCounts, int multiple) {
+		this.betDetail = betDetail;
+		this.betCounts = betCounts;
+		this.multiple = multiple;
+		this.salesUnit = 1;
+		this.betAmount = betCounts * multiple * 10000L;
+	}
+
+	@Override
+	public long getBetCounts() {
+		return betCounts;
+	}
+
+	@Override
+	public String getBetDetail() {
+		return betDetail;
+	}
+
+	@Override
+	public long getBetAmount() {
+		return betAmount;
+	}
+
+	@Override
+	public int getMultiple() {
+		return multiple;
+	}
+
+	@Override
+	public int getSalesUnit() {
+		return salesUnit;
+	}
+
+	@Override
+	public String toString() {
+		return betDetail;
+	}
+
+}
@@ -0,0 +1,137 @@
+package pers.arjay.benchmark;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pers.arjay.Separators;
+import pers.arjay.structure.BetExpansion;
+import pers.arjay.structure.BetTree;
+import pers.arjay.structure.PermutationCounter;
+import pers.arjay.utils.CombinUtil;
+
+/**
+ * <pre>
+ * 注數計算與投注展開。
+ *
+ * positions 為排列投注內容，最差情況為 "0123456789,0123456789,0123456789,0123456789,0123456789"：
+ *
+ * betTreeCount：建立 {@link BetTree} 後計算，ValidateChain 原本的作法
+ * permutationCount：{@link PermutationCounter}
+ * generateBets：{@link BetTree#generateBets} 展開所有投注
+ * betTreeIterator / expansion / expansionTuples：逐注展開，不一次放入集合
+ *
+ * combin / combination 為 {@link CombinUtil} 11選5 與 30選10。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CountingBenchmark {
+
+	@Param({ "123,234,345", "01234,12345,23456,34567", "0123456789,0123456789,0123456789,0123456789,0123456789" })
+	private String positions;
+
+	private String[][] items;
+
+	private List<BetTree> trees;
+
+	@Setup
+	public void setup() {
+		final String[] bets = positions.split(Separators.comma);
+		items = new String[bets.length][];
+		for (int i = 0; i < bets.length; i++) {
+			items[i] = bets[i].split(Separators.unsign);
+		}
+		trees = this.buildTrees();
+	}
+
+	/** 同 ValidateChain 原本建立 {@link BetTree} 的方式 */
+	private List<BetTree> buildTrees() {
+		final List<BetTree> roots = new ArrayList<>();
+		for (String root : items[0]) {
+			roots.add(new BetTree(root));
+		}
+		for (int level = 1; level < items.length; level++) {
+			for (BetTree root : roots) {
+				for (String item : items[level]) {
+					root.addNode(level, item);
+				}
+			}
+		}
+		return roots;
+	}
+
+	@Benchmark
+	public long betTreeCount() {
+		long counter = 0;
+		for (BetTree root : this.buildTrees()) {
+			counter += root.count(items.length);
+		}
+		return counter;
+	}
+
+	@Benchmark
+	public long permutationCount() {
+		return PermutationCounter.count(items);
+	}
+
+	@Benchmark
+	public int generateBets() {
+		final List<String> bets = new ArrayList<>();
+		for (BetTree root : trees) {
+			root.generateBets(bets, "", Separators.comma);
+		}
+		return bets.size();
+	}
+
+	@Benchmark
+	public void betTreeIterator(Blackhole blackhole) {
+		for (BetTree root : trees) {
+			final Iterator<String> bets = root.iterator("", Separators.comma);
+			while (bets.hasNext()) {
+				blackhole.consume(bets.next());
+			}
+		}
+	}
+
+	@Benchmark
+	public void expansion(Blackhole blackhole) {
+		final Iterator<String> bets = BetExpansion.of(items).iterator(Separators.comma);
+		while (bets.hasNext()) {
+			blackhole.consume(bets.next());
+		}
+	}
+
+	@Benchmark
+	public void expansionTuples(Blackhole blackhole) {
+		final Iterator<int[]> tuples = BetExpansion.of(items).tuples();
+		while (tuples.hasNext()) {
+			blackhole.consume(tuples.next());
+		}
+	}
+
+	@Benchmark
+	public long combin() {
+		return CombinUtil.combin(11, 5) + CombinUtil.combin(30, 10);
+	}
+
+	@Benchmark
+	public long combination() {
+		return CombinUtil.combination(11, 5) + CombinUtil.combination(30, 10);
+	}
+
+}
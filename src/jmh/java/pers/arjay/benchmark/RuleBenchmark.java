@@ -0,0 +1,78 @@
+package pers.arjay.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pers.arjay.model.Slip;
+import pers.arjay.structure.ValidateChain;
+
+/**
+ * <pre>
+ * {@link ValidateChain} 單一規則的成本，每次呼叫建立 resultMode 的驗證鏈並只執行一條規則，
+ * 規則不適用於該語料時只記錄錯誤，不會因拋出例外影響結果。
+ *
+ * NONE 只有切割，其餘規則的結果扣除 NONE 即為規則本身的成本。
+ *
+ * 只測部分組合可使用 JMH 的 -p 參數，如 -p rule=ITEM_NOT_REPEAT
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RuleBenchmark {
+
+	public enum Rule {
+		NONE(chain -> chain),
+		BET_HAS_TEXT(ValidateChain::betHasText),
+		BET_LENGTH_BETWEEN(chain -> chain.betLengthBetween(1, 10)),
+		BET_IS_NUMBER(ValidateChain::betIsNumber),
+		BET_NUMBER_BETWEEN(chain -> chain.betNumberBetween(0, 99999)),
+		BET_NOT_REPEAT(ValidateChain::betNotRepeat),
+		ITEM_IS_NUMBER(ValidateChain::itemIsNumber),
+		ITEM_LENGTH_BETWEEN(chain -> chain.itemLengthBetween(1, 2)),
+		ITEM_NOT_REPEAT(ValidateChain::itemNotRepeat),
+		BET_COUNTS_EQUALS_BETS(ValidateChain::betCountsEqualsBets),
+		BET_COUNTS_EQUALS_COMBIN_BETS(chain -> chain.betCountsEqualsCombinBets(5)),
+		BET_COUNTS_EQUALS_PERMUTATION_ITEMS(ValidateChain::betCountsEqualsPermutationItems),
+		BET_COUNTS_EQUALS_SUM_ITEMS(ValidateChain::betCountsEqualsSumItems);
+
+		private final UnaryOperator<ValidateChain> rule;
+
+		Rule(UnaryOperator<ValidateChain> rule) {
+			this.rule = rule;
+		}
+	}
+
+	@Param({ "SINGLE", "COMPOSITE", "POSITIONAL", "PERMUTATION" })
+	private SlipCorpus corpus;
+
+	@Param
+	private Rule rule;
+
+	private Slip[] slips;
+
+	private int cursor;
+
+	@Setup
+	public void setup() {
+		slips = corpus.slips();
+	}
+
+	@Benchmark
+	public boolean rule() {
+		final Slip slip = slips[cursor++ & (SlipCorpus.SIZE - 1)];
+		return rule.rule.apply(corpus.newChain(slip).resultMode()).isValid();
+	}
+
+}
@@ -0,0 +1,253 @@
+package pers.arjay.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import pers.arjay.Separators;
+import pers.arjay.model.Slip;
+import pers.arjay.structure.BetDomain;
+import pers.arjay.structure.PermutationCounter;
+import pers.arjay.structure.ValidateChain;
+import pers.arjay.structure.ValidatePlan;
+import pers.arjay.utils.CombinUtil;
+
+/**
+ * <pre>
+ * benchmark 用的投注單語料，每種玩法以固定亂數種子產生 {@link #SIZE} 張合法投注單，
+ * 並提供線上使用的驗證鏈 {@link #chain(Slip)} 及對應的 {@link #plan()}。
+ *
+ * SINGLE：單式，多注以空白分隔，如 "12345 67890"
+ * COMPOSITE：複式，11選5，如 "01,03,05,07,09,11"
+ * POSITIONAL：定位，各位置以逗號、位置內以 | 分隔，如 "0|3|5,1,2|9,4,7|8"
+ * PERMUTATION：排列，最差情況為五個位置皆為 0123456789
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public enum SlipCorpus {
+
+	SINGLE {
+		@Override
+		Slip generate(Random random) {
+			final int tickets = 1 + random.nextInt(5);
+			final StringBuilder detail = new StringBuilder();
+			for (int i = 0; i < tickets; i++) {
+				if (i > 0) {
+					detail.append(Separators.space);
+				}
+				for (int j = 0; j < 5; j++) {
+					detail.append(random.nextInt(10));
+				}
+			}
+			return new BenchmarkSlip(detail.toString(), tickets, 1 + random.nextInt(10));
+		}
+
+		@Override
+		public ValidateChain newChain(Slip slip) {
+			return new ValidateChain(slip, Separators.space, Separators.unsign, "");
+		}
+
+		@Override
+		ValidateChain rules(ValidateChain chain) {
+			return chain
+					.betHasText()
+					.betLengthBetween(1, 5)
+					.betIsNumber()
+					.itemLengthEquals(5)
+					.betCountsEqualsBets()
+					.totalAmountValid();
+		}
+
+		@Override
+		ValidatePlan.Builder builder() {
+			return ValidatePlan.builder(Separators.space, Separators.unsign, "")
+					.betHasText()
+					.betLengthBetween(1, 5)
+					.betIsNumber()
+					.itemLengthEquals(5)
+					.betCountsEqualsBets()
+					.totalAmountValid();
+		}
+	},
+
+	COMPOSITE {
+		@Override
+		Slip generate(Random random) {
+			final List<String> numbers = new ArrayList<>();
+			for (int i = 1; i <= 11; i++) {
+				numbers.add(String.format("%02d", i));
+			}
+			Collections.shuffle(numbers, random);
+
+			final List<String> picked = numbers.subList(0, 5 + random.nextInt(7));
+			Collections.sort(picked);
+			return new BenchmarkSlip(String.join(Separators.comma, picked), CombinUtil.combination(picked.size(), 5),
+					1 + random.nextInt(10));
+		}
+
+		@Override
+		public ValidateChain newChain(Slip slip) {
+			return new ValidateChain(slip, Separators.comma);
+		}
+
+		@Override
+		ValidateChain rules(ValidateChain chain) {
+			return chain
+					.betLengthBetween(5, 11)
+					.itemLengthEquals(2)
+					.betIn(ELEVEN)
+					.betNotRepeat()
+					.betCountsEqualsCombinBets(5)
+					.totalAmountValid();
+		}
+
+		@Override
+		ValidatePlan.Builder builder() {
+			return ValidatePlan.builder(Separators.comma)
+					.betLengthBetween(5, 11)
+					.itemLengthEquals(2)
+					.betIn(ELEVEN)
+					.betNotRepeat()
+					.betCountsEqualsCombinBets(5)
+					.totalAmountValid();
+		}
+	},
+
+	POSITIONAL {
+		@Override
+		Slip generate(Random random) {
+			final StringBuilder detail = new StringBuilder();
+			long counts = 0;
+			for (int position = 0; position < 5; position++) {
+				if (position > 0) {
+					detail.append(Separators.comma);
+				}
+				final String[] digits = shuffledDigits(random, 1 + random.nextInt(10));
+				detail.append(String.join("|", digits));
+				counts += digits.length;
+			}
+			return new BenchmarkSlip(detail.toString(), counts, 1 + random.nextInt(10));
+		}
+
+		@Override
+		public ValidateChain newChain(Slip slip) {
+			return new ValidateChain(slip, Separators.comma, "\\|", "");
+		}
+
+		@Override
+		ValidateChain rules(ValidateChain chain) {
+			return chain
+					.betHasText()
+					.itemIsNumber()
+					.itemLengthBetween(1, 10)
+					.itemNotRepeat()
+					.betCountsEqualsSumItems()
+					.totalAmountValid();
+		}
+
+		@Override
+		ValidatePlan.Builder builder() {
+			return ValidatePlan.builder(Separators.comma, "\\|", "")
+					.betHasText()
+					.itemIsNumber()
+					.itemLengthBetween(1, 10)
+					.itemNotRepeat()
+					.betCountsEqualsSumItems()
+					.totalAmountValid();
+		}
+	},
+
+	PERMUTATION {
+		@Override
+		Slip generate(Random random) {
+			final String[][] positions = new String[5][];
+			/* 一半為最差情況，每個位置皆為 0～9 */
+			final boolean worst = random.nextBoolean();
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = shuffledDigits(random, worst ? 10 : 5 + random.nextInt(6));
+			}
+
+			final StringBuilder detail = new StringBuilder();
+			for (int i = 0; i < positions.length; i++) {
+				if (i > 0) {
+					detail.append(Separators.comma);
+				}
+				detail.append(String.join("", positions[i]));
+			}
+			return new BenchmarkSlip(detail.toString(), PermutationCounter.count(positions), 1 + random.nextInt(10));
+		}
+
+		@Override
+		public ValidateChain newChain(Slip slip) {
+			return new ValidateChain(slip, Separators.comma, Separators.unsign, "");
+		}
+
+		@Override
+		ValidateChain rules(ValidateChain chain) {
+			return chain
+					.betLengthEquals(5)
+					.itemIsNumber()
+					.itemNotRepeat()
+					.betCountsEqualsPermutationItems()
+					.totalAmountValid();
+		}
+
+		@Override
+		ValidatePlan.Builder builder() {
+			return ValidatePlan.builder(Separators.comma, Separators.unsign, "")
+					.betLengthEquals(5)
+					.itemIsNumber()
+					.itemNotRepeat()
+					.betCountsEqualsPermutationItems()
+					.totalAmountValid();
+		}
+	};
+
+	/** 每種玩法的投注單數量，需為2的次方 */
+	public static final int SIZE = 1024;
+
+	private static final BetDomain ELEVEN = BetDomain.range(1, 11, 2);
+
+	private static final long SEED = 20171002L;
+
+	/** 產生一張合法的投注單 */
+	abstract Slip generate(Random random);
+
+	/** 只切割不驗證的 {@link ValidateChain} */
+	public abstract ValidateChain newChain(Slip slip);
+
+	abstract ValidateChain rules(ValidateChain chain);
+
+	/** 線上使用的驗證鏈 */
+	public ValidateChain chain(Slip slip) {
+		return this.rules(this.newChain(slip));
+	}
+
+	abstract ValidatePlan.Builder builder();
+
+	/** 與 {@link #chain(Slip)} 相同規則的 {@link ValidatePlan} */
+	public ValidatePlan plan() {
+		return this.builder().build();
+	}
+
+	public Slip[] slips() {
+		final Random random = new Random(SEED + this.ordinal());
+		final Slip[] slips = new Slip[SIZE];
+		for (int i = 0; i < slips.length; i++) {
+			slips[i] = this.generate(random);
+		}
+		return slips;
+	}
+
+	private static String[] shuffledDigits(Random random, int size) {
+		final List<String> digits = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			digits.add(String.valueOf(i));
+		}
+		Collections.shuffle(digits, random);
+		return digits.subList(0, size).toArray(new String[size]);
+	}
+
+}
@@ -0,0 +1,73 @@
+package pers.arjay.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pers.arjay.model.Slip;
+import pers.arjay.structure.ValidateChain;
+import pers.arjay.structure.ValidatePlan;
+import pers.arjay.structure.ValidateResult;
+
+/**
+ * <pre>
+ * 線上驗證鏈的完整流程，每次呼叫驗證語料中的下一張投注單。
+ *
+ * chain：每張投注單建立 {@link ValidateChain}
+ * plan：預先編譯的 {@link ValidatePlan#validate(Slip)}
+ * planCheck：{@link ValidatePlan#check(int, Slip)}
+ *
+ * 配合 gc profiler 可看到每次驗證的配置量 (gc.alloc.rate.norm)。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ValidationBenchmark {
+
+	@Param({ "SINGLE", "COMPOSITE", "POSITIONAL", "PERMUTATION" })
+	private SlipCorpus corpus;
+
+	private Slip[] slips;
+
+	private ValidatePlan plan;
+
+	private int cursor;
+
+	@Setup
+	public void setup() {
+		slips = corpus.slips();
+		plan = corpus.plan();
+	}
+
+	private Slip next() {
+		return slips[cursor++ & (SlipCorpus.SIZE - 1)];
+	}
+
+	@Benchmark
+	public ValidateChain chain() {
+		return corpus.chain(this.next());
+	}
+
+	@Benchmark
+	public Slip plan() {
+		final Slip slip = this.next();
+		plan.validate(slip);
+		return slip;
+	}
+
+	@Benchmark
+	public ValidateResult planCheck() {
+		return plan.check(cursor, this.next());
+	}
+
+}
@@ -19,7 +19,29 @@ public class SampleException extends RuntimeException {
 	}
 
 	public SampleException(String format, Object... args) {
-		super(MessageFormatter.format(format, args).getMessage());
+		super(MessageFormatter.arrayFormat(format, args).getMessage());
+	}
+
+	/**
+	 * @param writableStackTrace
+	 *            false時不產生stack trace
+	 */
+	protected SampleException(String message, Throwable cause, boolean writableStackTrace) {
+		super(message, cause, false, writableStackTrace);
+	}
+
+	/**
+	 * 不產生stack trace的例外，可預先建立並重複拋出，用於大量錯誤時降低建立例外的成本。
+	 */
+	public static SampleException stackless(String message) {
+		return new SampleException(message, null, false);
+	}
+
+	/**
+	 * 不產生stack trace的例外
+	 */
+	public static SampleException stackless(String format, Object... args) {
+		return new SampleException(MessageFormatter.arrayFormat(format, args).getMessage(), null, false);
 	}
 	
 }
@@ -2,6 +2,8 @@ package pers.arjay.filter;
 
 import java.io.IOException;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -9,19 +11,69 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
+import lombok.extern.slf4j.Slf4j;
 import pers.arjay.http.CustomerHttpServletRequestWrapper;
+import pers.arjay.http.RequestBodyTooLargeException;
 
+/**
+ * <pre>
+ * 以 {@link CustomerHttpServletRequestWrapper} 包裝請求，使內容可重複讀取。
+ *
+ * init-param：
+ * memoryThreshold：放在記憶體的內容上限 (byte)，超過時寫入暫存檔
+ * maxBodySize：內容上限 (byte)，Content-Length 超過時直接回應 413；
+ *              未提供 Content-Length (如 chunked) 時讀取超過上限才會發現，回應尚未送出時同樣回應 413；
+ *              例外被包裝 (如 Spring MVC 的 HttpMessageNotReadableException) 或被框架轉為 400 時也回應 413
+ * </pre>
+ */
+@Slf4j
 public class ReplacedFilter implements Filter {
 
+	private int memoryThreshold = CustomerHttpServletRequestWrapper.DEFAULT_MEMORY_THRESHOLD;
+
+	private long maxBodySize = CustomerHttpServletRequestWrapper.DEFAULT_MAX_BODY_SIZE;
+
 	@Override
 	public void init(FilterConfig filterConfig) throws ServletException {
+		final String memoryThreshold = filterConfig.getInitParameter("memoryThreshold");
+		if (memoryThreshold != null) {
+			this.memoryThreshold = Integer.parseInt(memoryThreshold.trim());
+		}
+		final String maxBodySize = filterConfig.getInitParameter("maxBodySize");
+		if (maxBodySize != null) {
+			this.maxBodySize = Long.parseLong(maxBodySize.trim());
+		}
 	}
 
 	@Override
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
 		if (request instanceof HttpServletRequest) {
-			chain.doFilter(new CustomerHttpServletRequestWrapper((HttpServletRequest) request), response);
+			if (request.getContentLengthLong() > maxBodySize) {
+				((HttpServletResponse) response).sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+				return;
+			}
+			final CustomerHttpServletRequestWrapper wrapper = new CustomerHttpServletRequestWrapper(
+					(HttpServletRequest) request, memoryThreshold, maxBodySize);
+			try {
+				chain.doFilter(wrapper, new BodyTooLargeResponse((HttpServletResponse) response, wrapper));
+			} catch (IOException | ServletException | RuntimeException e) {
+				final RequestBodyTooLargeException tooLarge = findTooLarge(e);
+				if (tooLarge == null || response.isCommitted()) {
+					throw e;
+				}
+				log.debug("reject request body over {} bytes", tooLarge.getMaxBodySize());
+				((HttpServletResponse) response).sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			} finally {
+				if (wrapper.isAsyncStarted()) {
+					// 非同步處理仍可能讀取內容，結束時才釋放
+					wrapper.getAsyncContext().addListener(new ReleaseListener(wrapper));
+				} else {
+					release(wrapper);
+				}
+			}
 		} else {
 			chain.doFilter(request, response);
 		}
@@ -31,4 +83,88 @@ public class ReplacedFilter implements Filter {
 	public void destroy() {
 	}
 
+	/**
+	 * 依 cause 找出 {@link RequestBodyTooLargeException}，如 ServletException 或 HttpMessageNotReadableException 包裝的例外
+	 */
+	private static RequestBodyTooLargeException findTooLarge(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+			if (cause instanceof RequestBodyTooLargeException) {
+				return (RequestBodyTooLargeException) cause;
+			}
+		}
+		return null;
+	}
+
+	private static void release(CustomerHttpServletRequestWrapper wrapper) {
+		try {
+			wrapper.close();
+		} catch (IOException e) {
+			log.warn("release request body error", e);
+		}
+	}
+
+	/**
+	 * 內容超過上限後，將 400 改為 413；
+	 * 如 Spring MVC 以 HttpMessageNotReadableException 包裝讀取時的例外，並直接回應 400 而不拋出
+	 */
+	private static final class BodyTooLargeResponse extends HttpServletResponseWrapper {
+
+		private final CustomerHttpServletRequestWrapper request;
+
+		private BodyTooLargeResponse(HttpServletResponse response, CustomerHttpServletRequestWrapper request) {
+			super(response);
+			this.request = request;
+		}
+
+		private int status(int sc) {
+			return sc == SC_BAD_REQUEST && request.isBodyTooLarge() ? SC_REQUEST_ENTITY_TOO_LARGE : sc;
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			super.sendError(status(sc));
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			super.sendError(status(sc), msg);
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			super.setStatus(status(sc));
+		}
+	}
+
+	/**
+	 * 非同步處理結束時釋放請求內容，逾時與錯誤之後也會呼叫 onComplete
+	 */
+	private static final class ReleaseListener implements AsyncListener {
+
+		private final CustomerHttpServletRequestWrapper wrapper;
+
+		private ReleaseListener(CustomerHttpServletRequestWrapper wrapper) {
+			this.wrapper = wrapper;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			release(wrapper);
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// 重新開始非同步處理時 listener 會被移除，需再註冊
+			event.getAsyncContext().addListener(this);
+		}
+	}
+
 }
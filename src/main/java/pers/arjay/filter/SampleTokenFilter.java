@@ -1,7 +1,19 @@
 package pers.arjay.filter;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -14,9 +26,13 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
 public class SampleTokenFilter extends OncePerRequestFilter {
 
 	@Autowired
@@ -26,6 +42,116 @@ public class SampleTokenFilter extends OncePerRequestFilter {
 
 	private final static String tokenHead = "accessToken";
 
+	/**
+	 * 使用者的快取時間
+	 */
+	private Duration userCacheTtl = Duration.ofMinutes(5);
+
+	/**
+	 * 查無使用者的快取時間
+	 */
+	private Duration negativeCacheTtl = Duration.ofSeconds(30);
+
+	/**
+	 * 最多快取的使用者數
+	 */
+	private int userCacheSize = 10000;
+
+	private UserDetailsCache userDetailsCache;
+
+	/**
+	 * 非同步查詢中的使用者，async dispatch 時取出
+	 */
+	private final static String pendingUserDetails = SampleTokenFilter.class.getName() + ".PENDING_USER_DETAILS";
+
+	/**
+	 * 查詢使用者的執行緒池，設定後啟用非同步模式
+	 */
+	private Executor authenticationExecutor;
+
+	/**
+	 * 非同步查詢的逾時時間，逾時回應 503
+	 */
+	private Duration asyncTimeout = Duration.ofSeconds(30);
+
+	public void setUserCacheTtl(Duration userCacheTtl) {
+		this.userCacheTtl = userCacheTtl;
+	}
+
+	public void setNegativeCacheTtl(Duration negativeCacheTtl) {
+		this.negativeCacheTtl = negativeCacheTtl;
+	}
+
+	public void setUserCacheSize(int userCacheSize) {
+		this.userCacheSize = userCacheSize;
+	}
+
+	/**
+	 * <pre>
+	 * 設定查詢使用者的執行緒池，啟用非同步模式：
+	 * 快取未命中時以 startAsync 釋放容器執行緒，查詢完成後 dispatch 回到過濾鏈繼續處理。
+	 * 快取命中、請求不支援非同步或執行緒池已滿時，仍在容器執行緒同步查詢。
+	 * 建議使用有界的執行緒池，如 {@link #newAuthenticationExecutor(int, int)}。
+	 *
+	 * 過濾器註冊時必須包含 {@link DispatcherType#ASYNC} 並支援非同步
+	 * (如 FilterRegistrationBean 的 setDispatcherTypes 與 setAsyncSupported)，
+	 * 否則 dispatch 回來時不會經過此過濾器，請求沒有認證資訊。
+	 * </pre>
+	 *
+	 * @param authenticationExecutor
+	 *            執行緒池，null 表示同步查詢
+	 */
+	public void setAuthenticationExecutor(Executor authenticationExecutor) {
+		this.authenticationExecutor = authenticationExecutor;
+	}
+
+	public void setAsyncTimeout(Duration asyncTimeout) {
+		this.asyncTimeout = asyncTimeout;
+	}
+
+	/**
+	 * 建立有界的查詢執行緒池，佇列已滿時拒絕，由容器執行緒同步查詢
+	 *
+	 * @param threads
+	 *            執行緒數
+	 * @param queueCapacity
+	 *            等待中的查詢數上限
+	 * @return 已初始化的執行緒池
+	 */
+	public static ThreadPoolTaskExecutor newAuthenticationExecutor(int threads, int queueCapacity) {
+		final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("token-auth-");
+		executor.initialize();
+		return executor;
+	}
+
+	@Override
+	protected void initFilterBean() throws ServletException {
+		userDetailsCache = new UserDetailsCache(userCacheSize, userCacheTtl, negativeCacheTtl);
+	}
+
+	/**
+	 * 移除快取的使用者，使用者權限或狀態變更時呼叫，該使用者所有令牌的下次請求重新查詢
+	 *
+	 * @param username
+	 *            使用者名稱，即 {@link UserDetails#getUsername()}
+	 */
+	public void evictUserDetails(String username) {
+		userDetailsCache.evict(username);
+	}
+
+	/**
+	 * 非同步查詢完成後 dispatch 回來時也要執行，以設定認證資訊；
+	 * Spring 5.0 的 {@link #isAsyncDispatch} 只判斷 Spring MVC 的非同步處理，這裡改以 DispatcherType 判斷
+	 */
+	@Override
+	protected boolean shouldNotFilterAsyncDispatch() {
+		return false;
+	}
+
 	// @formatter:off
 	@Override
 	protected void doFilterInternal(
@@ -34,26 +160,129 @@ public class SampleTokenFilter extends OncePerRequestFilter {
 		FilterChain chain) throws ServletException, IOException {
 	// @formatter:on
 
+		if (request.getDispatcherType() == DispatcherType.ASYNC) {
+			final Object pending = request.getAttribute(pendingUserDetails);
+			if (pending instanceof CompletableFuture) {
+				request.removeAttribute(pendingUserDetails);
+				@SuppressWarnings("unchecked")
+				final CompletableFuture<UserDetails> userDetails = (CompletableFuture<UserDetails>) pending;
+				authenticate(request, join(userDetails));
+			}
+			// 其他非同步處理的 dispatch 已在第一次進入時認證
+			chain.doFilter(request, response);
+			return;
+		}
+
 		final String authHeader = request.getHeader(tokenHeader);
 		if (authHeader != null && authHeader.startsWith(tokenHead)) {
 			final String authToken = authHeader.substring(tokenHead.length());
-			logger.info("access otp token :" + authToken.trim());
-
-			final UserDetails userDetails = userDetailsService.loadUserByUsername(authToken.trim());
-			final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-			
-			
-			if (userDetails != null && authentication == null) {
-				UsernamePasswordAuthenticationToken upAuthentication = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-				upAuthentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+			if (log.isDebugEnabled()) {
+				log.debug("access otp token, fingerprint :{}", fingerprint(authToken.trim()));
+			}
 
-				logger.info("authenticated user " + userDetails.getUsername() + ", setting security context");
-				
-				SecurityContextHolder.getContext().setAuthentication(upAuthentication);
+			if (authenticationExecutor != null && request.isAsyncSupported()) {
+				// 執行緒池已滿時 loadAsync 在容器執行緒查詢，回傳已完成的結果
+				final CompletableFuture<UserDetails> userDetails = userDetailsCache.loadAsync(authToken.trim(), userDetailsService,
+						authenticationExecutor);
+				if (!userDetails.isDone()) {
+					resumeWhenDone(request, response, userDetails);
+					return;
+				}
+				authenticate(request, join(userDetails));
+			} else {
+				authenticate(request, userDetailsCache.load(authToken.trim(), userDetailsService));
 			}
 		}
 
 		chain.doFilter(request, response);
 	}
 
+	/**
+	 * 釋放容器執行緒，查詢完成後 dispatch 回到過濾鏈
+	 */
+	private void resumeWhenDone(HttpServletRequest request, HttpServletResponse response,
+			CompletableFuture<UserDetails> userDetails) {
+		request.setAttribute(pendingUserDetails, userDetails);
+		final AsyncContext asyncContext = request.startAsync(request, response);
+		asyncContext.setTimeout(asyncTimeout.toMillis());
+
+		// 逾時、錯誤、結束與查詢完成只處理先發生的一個，非同步處理結束後不再 dispatch
+		final AtomicBoolean resumed = new AtomicBoolean();
+		asyncContext.addListener(new AsyncListener() {
+
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				if (resumed.compareAndSet(false, true)) {
+					log.warn("loading user details timed out after {}", asyncTimeout);
+					((HttpServletResponse) event.getSuppliedResponse()).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+					asyncContext.complete();
+				}
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) {
+			}
+
+			@Override
+			public void onError(AsyncEvent event) {
+				resumed.set(true);
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) {
+				resumed.set(true);
+			}
+		});
+		userDetails.whenComplete((result, error) -> {
+			if (resumed.compareAndSet(false, true)) {
+				asyncContext.dispatch();
+			}
+		});
+	}
+
+	/**
+	 * 取得查詢結果，查詢時的例外與同步查詢相同，直接拋出
+	 */
+	private static UserDetails join(CompletableFuture<UserDetails> userDetails) throws ServletException {
+		try {
+			return userDetails.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new ServletException(e.getCause());
+		}
+	}
+
+	/**
+	 * 令牌的指紋，供日誌比對同一個令牌，不記錄令牌本身
+	 *
+	 * @return 令牌 SHA-256 雜湊的前 8 個十六進位字元
+	 */
+	private static String fingerprint(String token) {
+		final byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		final StringBuilder fingerprint = new StringBuilder(8);
+		for (int i = 0; i < 4; i++) {
+			fingerprint.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+		}
+		return fingerprint.toString();
+	}
+
+	private void authenticate(HttpServletRequest request, UserDetails userDetails) {
+		final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (userDetails != null && authentication == null) {
+			UsernamePasswordAuthenticationToken upAuthentication = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+			upAuthentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+			log.debug("authenticated user {}, setting security context", userDetails.getUsername());
+
+			SecurityContextHolder.getContext().setAuthentication(upAuthentication);
+		}
+	}
+
 }
@@ -0,0 +1,325 @@
+package pers.arjay.filter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+/**
+ * <pre>
+ * {@link UserDetailsService} 查詢結果的快取，以傳給 loadUserByUsername 的名稱 (如令牌) 為鍵。
+ *
+ * 找到的使用者保留 ttl，最多 maxSize 筆，超過時一次移除約 1/8 最久未使用的項目；
+ * 查無使用者時保留 negativeTtl，存放在另一個較小的集合，大量無效的令牌不會擠掉有效的使用者。
+ * 其他例外 (如資料庫無法連線) 不快取，直接拋出。
+ *
+ * 找到的使用者另以 {@link UserDetails#getUsername()} 建立索引，{@link #evict(String)} 以使用者名稱移除其所有項目。
+ * 同一個鍵同時只查詢一次，其他請求共用查詢中的結果。
+ * 命中快取不需取得鎖，只記錄使用時間；鎖只涵蓋放入與移除，查詢 {@link UserDetailsService} 在鎖外進行。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+class UserDetailsCache {
+
+	/**
+	 * 快取中查無使用者的結果
+	 */
+	private static final Cached NOT_FOUND = new Cached(null, 0, 0);
+
+	/**
+	 * 找到的使用者，只在持有鎖時修改
+	 */
+	private final ConcurrentMap<String, Cached> found = new ConcurrentHashMap<>();
+
+	/**
+	 * 查無使用者的鍵，只在持有鎖時修改
+	 */
+	private final ConcurrentMap<String, Cached> notFound = new ConcurrentHashMap<>();
+
+	/**
+	 * 使用者名稱對應的快取鍵
+	 */
+	private final Map<String, Set<String>> keysByUsername = new HashMap<>();
+
+	/**
+	 * 查詢中的鍵
+	 */
+	private final ConcurrentMap<String, CompletableFuture<UserDetails>> loading = new ConcurrentHashMap<>();
+
+	/**
+	 * 每次移除時遞增，查詢期間被移除的結果不放入快取
+	 */
+	private long evictions;
+
+	private final int maxSize;
+
+	private final int maxNotFound;
+
+	private final long ttlNanos;
+
+	private final long negativeTtlNanos;
+
+	/**
+	 * @param maxSize
+	 *            最多快取的使用者數，查無使用者的項目最多 maxSize / 4 筆
+	 * @param ttl
+	 *            使用者的快取時間
+	 * @param negativeTtl
+	 *            查無使用者的快取時間
+	 */
+	UserDetailsCache(int maxSize, Duration ttl, Duration negativeTtl) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		this.maxSize = maxSize;
+		this.maxNotFound = Math.max(1, maxSize / 4);
+		this.ttlNanos = ttl.toNanos();
+		this.negativeTtlNanos = negativeTtl.toNanos();
+	}
+
+	/**
+	 * 取得使用者，快取中沒有或已過期時向 userDetailsService 查詢，同一個鍵已在查詢中時等待其結果
+	 *
+	 * @param key
+	 *            傳給 loadUserByUsername 的名稱
+	 * @param userDetailsService
+	 *            快取未命中時使用
+	 * @return 使用者，查無使用者時為 null
+	 */
+	UserDetails load(String key, UserDetailsService userDetailsService) {
+		final Cached cached = getCached(key);
+		if (cached != null) {
+			return cached.userDetails;
+		}
+		final CompletableFuture<UserDetails> created = new CompletableFuture<>();
+		final CompletableFuture<UserDetails> pending = loading.putIfAbsent(key, created);
+		if (pending == null) {
+			loadAndCache(key, userDetailsService, created);
+		}
+		try {
+			return (pending != null ? pending : created).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * 取得使用者，快取中沒有或已過期時在 executor 向 userDetailsService 查詢，同一個鍵已在查詢中時共用其結果；
+	 * executor 無法接受查詢時在呼叫端執行緒查詢
+	 *
+	 * @param key
+	 *            傳給 loadUserByUsername 的名稱
+	 * @param userDetailsService
+	 *            快取未命中時使用
+	 * @param executor
+	 *            查詢 userDetailsService 的執行緒池
+	 * @return 使用者，查無使用者時為 null；快取命中時已完成
+	 */
+	CompletableFuture<UserDetails> loadAsync(String key, UserDetailsService userDetailsService, Executor executor) {
+		final Cached cached = getCached(key);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached.userDetails);
+		}
+		final CompletableFuture<UserDetails> created = new CompletableFuture<>();
+		final CompletableFuture<UserDetails> pending = loading.putIfAbsent(key, created);
+		if (pending != null) {
+			return pending;
+		}
+		try {
+			executor.execute(() -> loadAndCache(key, userDetailsService, created));
+		} catch (RejectedExecutionException e) {
+			loadAndCache(key, userDetailsService, created);
+		}
+		return created;
+	}
+
+	/**
+	 * @return 未過期的快取項目，查無使用者時為 {@link #NOT_FOUND}，未快取時為 null
+	 */
+	private Cached getCached(String key) {
+		final long now = System.nanoTime();
+		final Cached cached = found.get(key);
+		if (cached != null) {
+			if (now - cached.expiresAt < 0) {
+				cached.lastAccess = now;
+				return cached;
+			}
+			removeExpired(key, cached);
+		}
+		final Cached missing = notFound.get(key);
+		if (missing != null) {
+			if (now - missing.expiresAt < 0) {
+				missing.lastAccess = now;
+				return NOT_FOUND;
+			}
+			removeExpired(key, missing);
+		}
+		return null;
+	}
+
+	/**
+	 * 移除過期的項目，期間已被取代的項目保留
+	 */
+	private synchronized void removeExpired(String key, Cached cached) {
+		if (cached.userDetails != null) {
+			if (found.remove(key, cached)) {
+				unindex(key, cached);
+			}
+		} else {
+			notFound.remove(key, cached);
+		}
+	}
+
+	/**
+	 * 查詢並放入快取，先移出查詢中的鍵再完成 result，之後的請求不會取得已移除的結果
+	 */
+	private void loadAndCache(String key, UserDetailsService userDetailsService, CompletableFuture<UserDetails> result) {
+		final long evictionsBefore;
+		synchronized (this) {
+			evictionsBefore = evictions;
+		}
+		UserDetails userDetails;
+		try {
+			try {
+				userDetails = userDetailsService.loadUserByUsername(key);
+			} catch (UsernameNotFoundException e) {
+				userDetails = null;
+			}
+
+			final long now = System.nanoTime();
+			synchronized (this) {
+				if (evictions == evictionsBefore) {
+					cache(key, userDetails, now);
+				}
+			}
+		} catch (RuntimeException | Error e) {
+			loading.remove(key, result);
+			result.completeExceptionally(e);
+			return;
+		}
+		loading.remove(key, result);
+		result.complete(userDetails);
+	}
+
+	private void cache(String key, UserDetails userDetails, long now) {
+		if (userDetails != null) {
+			final Cached previous = found.put(key, new Cached(userDetails, now + ttlNanos, now));
+			if (previous != null) {
+				unindex(key, previous);
+			}
+			keysByUsername.computeIfAbsent(userDetails.getUsername(), username -> new HashSet<>()).add(key);
+			trim(found, maxSize);
+		} else {
+			notFound.put(key, new Cached(null, now + negativeTtlNanos, now));
+			trim(notFound, maxNotFound);
+		}
+	}
+
+	/**
+	 * 超過上限時移除最久未使用的項目，一次移除到上限的 7/8，排序的成本分攤到之後的多次放入
+	 */
+	private void trim(Map<String, Cached> entries, int limit) {
+		final int size = entries.size();
+		if (size <= limit) {
+			return;
+		}
+		final long[] accesses = new long[size];
+		int count = 0;
+		for (Cached cached : entries.values()) {
+			if (count == size) {
+				break;
+			}
+			accesses[count++] = cached.lastAccess;
+		}
+		Arrays.sort(accesses, 0, count);
+		final int excess = Math.min(count, size - (limit - limit / 8));
+		// 比較時間差，System.nanoTime 可能為負
+		final long threshold = accesses[excess - 1] - accesses[0];
+		final long oldest = accesses[0];
+		final Iterator<Map.Entry<String, Cached>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<String, Cached> entry = iterator.next();
+			final Cached cached = entry.getValue();
+			if (cached.lastAccess - oldest <= threshold) {
+				iterator.remove();
+				if (cached.userDetails != null) {
+					unindex(entry.getKey(), cached);
+				}
+			}
+		}
+	}
+
+	private void unindex(String key, Cached cached) {
+		final Set<String> keys = keysByUsername.get(cached.userDetails.getUsername());
+		if (keys != null && keys.remove(key) && keys.isEmpty()) {
+			keysByUsername.remove(cached.userDetails.getUsername());
+		}
+	}
+
+	/**
+	 * 以使用者名稱移除其所有快取項目，如使用者權限或狀態變更時；查詢中的結果不會放入快取
+	 *
+	 * @param username
+	 *            {@link UserDetails#getUsername()}，也移除以此名稱為鍵的項目
+	 */
+	synchronized void evict(String username) {
+		final Set<String> keys = keysByUsername.remove(username);
+		if (keys != null) {
+			for (String key : keys) {
+				found.remove(key);
+			}
+		}
+		final Cached cached = found.remove(username);
+		if (cached != null) {
+			unindex(username, cached);
+		}
+		notFound.remove(username);
+		evictions++;
+	}
+
+	/**
+	 * 清空快取
+	 */
+	synchronized void clear() {
+		found.clear();
+		notFound.clear();
+		keysByUsername.clear();
+		evictions++;
+	}
+
+	private static final class Cached {
+
+		private final UserDetails userDetails;
+
+		private final long expiresAt;
+
+		/**
+		 * 最後使用的時間 (System.nanoTime)，命中時不取得鎖直接更新
+		 */
+		private volatile long lastAccess;
+
+		private Cached(UserDetails userDetails, long expiresAt, long lastAccess) {
+			this.userDetails = userDetails;
+			this.expiresAt = expiresAt;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+}
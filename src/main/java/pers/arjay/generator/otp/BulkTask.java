@@ -0,0 +1,86 @@
+package pers.arjay.generator.otp;
+
+import java.security.InvalidKeyException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes one integer result per index in parallel on a {@link ForkJoinPool}, splitting the index range in halves
+ * until each piece holds at most {@value #THRESHOLD} indexes.
+ */
+final class BulkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The largest range computed on a single thread; one password costs about a microsecond, so smaller ranges are not
+     * worth the overhead of forking.
+     */
+    static final int THRESHOLD = 256;
+
+    /**
+     * Computes the result for a single index.
+     */
+    @FunctionalInterface
+    interface Computation {
+        int compute(int index) throws InvalidKeyException;
+    }
+
+    private final Computation computation;
+    private final int[] results;
+    private final int from;
+    private final int to;
+
+    private BulkTask(final Computation computation, final int[] results, final int from, final int to) {
+        this.computation = computation;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Computes the results for indexes {@code 0} through {@code size - 1}.
+     *
+     * @throws InvalidKeyException if the computation of any index throws it
+     */
+    static int[] run(final ForkJoinPool pool, final int size, final Computation computation) throws InvalidKeyException {
+        final int[] results = new int[size];
+
+        if (size <= THRESHOLD) {
+            for (int i = 0; i < size; i++) {
+                results[i] = computation.compute(i);
+            }
+            return results;
+        }
+
+        try {
+            pool.invoke(new BulkTask(computation, results, 0, size));
+        } catch (final RuntimeException e) {
+            // Fork-join may re-create the exception in the calling thread, so search the whole chain of causes.
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof InvalidKeyException) {
+                    throw (InvalidKeyException) cause;
+                }
+            }
+            throw e;
+        }
+
+        return results;
+    }
+
+    @Override
+    protected void compute() {
+        if (this.to - this.from <= THRESHOLD) {
+            try {
+                for (int i = this.from; i < this.to; i++) {
+                    this.results[i] = this.computation.compute(i);
+                }
+            } catch (final InvalidKeyException e) {
+                throw new IllegalArgumentException(e);
+            }
+        } else {
+            final int middle = (this.from + this.to) >>> 1;
+            invokeAll(new BulkTask(this.computation, this.results, this.from, middle),
+                    new BulkTask(this.computation, this.results, middle, this.to));
+        }
+    }
+}
\ No newline at end of file
@@ -20,12 +20,18 @@ package pers.arjay.generator.otp;
 * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
 * THE SOFTWARE. */
 
-import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 
 /**
 * <p>Generates HMAC-based one-time passwords (HOTP) as specified in
@@ -34,6 +40,17 @@ import javax.crypto.Mac;
 * <p>{@code HmacOneTimePasswordGenerator} instances are thread-safe and may be shared and re-used across multiple
 * threads.</p>
 *
+* <p>Each thread keeps its own initialized {@link Mac} instances, one per key, for up to
+* {@value #MAX_CACHED_KEYS_PER_THREAD} keys per generator; generating a password for a recently-used key costs a
+* single HMAC computation with no provider lookup, key setup, or buffer allocation. Create one generator per
+* configuration and share it, since every generator a thread uses adds its own cache to that thread.</p>
+*
+* <p>Those instances, and the secret keys they were initialized with, stay reachable from each thread that used the
+* generator until {@link #clearMacCache()} is called on that thread, or until the generator itself is unreachable and
+* the thread's stale entry is expunged, which the JRE does lazily as the thread uses other thread-locals. Pooled
+* threads that outlive the generator, such as the request threads of a servlet container when an application is
+* undeployed, should call {@link #clearMacCache()} once they are done with it.</p>
+*
 * @author <a href="https://github.com/jchambers">Jon Chambers</a>
 */
 public class HmacOneTimePasswordGenerator {
@@ -42,6 +59,12 @@ public class HmacOneTimePasswordGenerator {
 
    private final int modDivisor;
 
+   /**
+    * The {@link MacCache} of this generator for each thread. Scoped to the generator rather than static, so that the
+    * caches do not pin their keys, nor this class, once the generator is gone.
+    */
+   private final ThreadLocal<MacCache> macCache;
+
    /**
     * The default length, in decimal digits, for one-time passwords.
     */
@@ -52,6 +75,12 @@ public class HmacOneTimePasswordGenerator {
     */
    public static final String HOTP_HMAC_ALGORITHM = "HmacSHA1";
 
+   /**
+    * The number of keys for which each thread keeps an initialized {@link Mac} per generator; the least-recently-used
+    * key is evicted and its {@code Mac} re-initialized for the new key.
+    */
+   public static final int MAX_CACHED_KEYS_PER_THREAD = 16;
+
    /**
     * Creates a new HMAC-based one-time password (HOTP) generator using a default password length
     * ({@value com.eatthepath.otp.HmacOneTimePasswordGenerator#DEFAULT_PASSWORD_LENGTH} digits).
@@ -92,32 +121,54 @@ public class HmacOneTimePasswordGenerator {
     * @throws NoSuchAlgorithmException if the given algorithm is not supported by the underlying JRE
     */
    protected HmacOneTimePasswordGenerator(final int passwordLength, final String algorithm) throws NoSuchAlgorithmException {
+       this.modDivisor = modDivisor(passwordLength);
+       this.passwordLength = passwordLength;
+
+       // Our purpose here is just to throw an exception immediately if the algorithm is bogus.
+       Mac.getInstance(algorithm);
+       this.algorithm = algorithm;
+
+       // The initializer must not capture this generator: a cache that referenced it would keep the thread-local
+       // reachable from its own value, and its entry would then never become stale.
+       this.macCache = ThreadLocal.withInitial(() -> new MacCache(algorithm));
+   }
+
+   /**
+    * Returns the divisor that reduces a truncated HMAC value to a password of the given length.
+    */
+   static int modDivisor(final int passwordLength) {
        switch (passwordLength) {
            case 6: {
-               this.modDivisor = 1_000_000;
-               break;
+               return 1_000_000;
            }
 
            case 7: {
-               this.modDivisor = 10_000_000;
-               break;
+               return 10_000_000;
            }
 
            case 8: {
-               this.modDivisor = 100_000_000;
-               break;
+               return 100_000_000;
            }
 
            default: {
                throw new IllegalArgumentException("Password length must be between 6 and 8 digits.");
            }
        }
+   }
 
-       this.passwordLength = passwordLength;
-
-       // Our purpose here is just to throw an exception immediately if the algorithm is bogus.
-       Mac.getInstance(algorithm);
-       this.algorithm = algorithm;
+   /**
+    * Creates an allocation-free {@link HotpEngine} for the given key that produces the same passwords as this
+    * generator.
+    *
+    * @param key a secret key with a raw encoding
+    *
+    * @return a new engine for the given key
+    *
+    * @throws InvalidKeyException if the key does not expose its raw encoding
+    * @throws NoSuchAlgorithmException if the algorithm of this generator is not supported by {@link HotpEngine}
+    */
+   public HotpEngine newEngine(final Key key) throws InvalidKeyException, NoSuchAlgorithmException {
+       return HotpEngine.of(this.algorithm, this.passwordLength, key);
    }
 
    /**
@@ -132,33 +183,210 @@ public class HmacOneTimePasswordGenerator {
     * @throws InvalidKeyException if the given key is inappropriate for initializing the {@link Mac} for this generator
     */
    public int generateOneTimePassword(final Key key, final long counter) throws InvalidKeyException {
-       final Mac mac;
+       final MacCache cache = this.getMacCache();
+       return this.generateOneTimePassword(cache, cache.getMac(key), counter);
+   }
+
+   /**
+    * Generates one-time passwords for many keys at once, spreading the work across the common
+    * {@link ForkJoinPool}.
+    *
+    * @param keys the secret keys to be used to generate the passwords
+    * @param counters the counter value for each key; must have the same length as {@code keys}
+    *
+    * @return the password for each key, in the same order as the keys
+    *
+    * @throws InvalidKeyException if any of the given keys is inappropriate for initializing the {@link Mac} for this
+    * generator
+    */
+   public int[] generateOneTimePasswords(final Key[] keys, final long[] counters) throws InvalidKeyException {
+       return this.generateOneTimePasswords(ForkJoinPool.commonPool(), keys, counters);
+   }
+
+   /**
+    * Generates one-time passwords for many keys at once on the given pool.
+    *
+    * @see #generateOneTimePasswords(Key[], long[])
+    */
+   public int[] generateOneTimePasswords(final ForkJoinPool pool, final Key[] keys, final long[] counters) throws InvalidKeyException {
+       if (keys.length != counters.length) {
+           throw new IllegalArgumentException("Keys and counters must have the same length.");
+       }
+
+       return BulkTask.run(pool, keys.length, i -> this.generateOneTimePassword(keys[i], counters[i]));
+   }
+
+   /**
+    * Generates one-time passwords for many keys with the same counter value, spreading the work across the common
+    * {@link ForkJoinPool}.
+    *
+    * @param keys the secret keys to be used to generate the passwords
+    * @param counter the counter value to be used for every key
+    *
+    * @return the password for each key, in the same order as the keys
+    *
+    * @throws InvalidKeyException if any of the given keys is inappropriate for initializing the {@link Mac} for this
+    * generator
+    */
+   public int[] generateOneTimePasswords(final Key[] keys, final long counter) throws InvalidKeyException {
+       return BulkTask.run(ForkJoinPool.commonPool(), keys.length, i -> this.generateOneTimePassword(keys[i], counter));
+   }
+
+   /**
+    * Generates one-time passwords for a stream of keys with the same counter value.
+    *
+    * @see #generateOneTimePasswords(Key[], long)
+    */
+   public int[] generateOneTimePasswords(final Stream<? extends Key> keys, final long counter) throws InvalidKeyException {
+       return this.generateOneTimePasswords(keys.toArray(Key[]::new), counter);
+   }
+
+   /**
+    * Verifies a one-time password against the expected counter value and the counter values after it, as a token whose
+    * counter has advanced past the server's (because passwords were generated but never used) would produce it. All
+    * candidates are computed with one {@link Mac} initialized once with the key and compared in constant time, so the
+    * time taken does not depend on whether or where the password matches. If more than one counter value matches, the
+    * earliest wins.
+    *
+    * @param key a secret key to be used to verify the password
+    * @param password the one-time password to verify
+    * @param counter the counter value the server expects next
+    * @param lookAhead the number of counter values after {@code counter} to also accept; zero accepts only
+    * {@code counter} itself
+    *
+    * @return the counter value the password was generated with, or an empty value if no counter in the window
+    * matches; the counter value expected next is the returned value plus one
+    *
+    * @throws InvalidKeyException if the given key is inappropriate for initializing the {@link Mac} for this generator
+    */
+   public OptionalLong verifyCounter(final Key key, final int password, final long counter, final int lookAhead) throws InvalidKeyException {
+       checkLookAhead(lookAhead);
+
+       final MacCache cache = this.getMacCache();
+       final Mac mac = cache.getMac(key);
+
+       int matched = 0;
+       long matchedIndex = 0;
+
+       for (long i = 0; i <= lookAhead; i++) {
+           final int difference = this.generateOneTimePassword(cache, mac, counter + i) ^ password;
+
+           // 1 if the codes are equal, 0 otherwise, without branching on the result.
+           final int equal = ((difference | -difference) >>> 31) ^ 1;
+           final int first = equal & ~matched;
+
+           matchedIndex ^= -(long) first & (matchedIndex ^ i);
+           matched |= equal;
+       }
+
+       return matched == 1 ? OptionalLong.of(counter + matchedIndex) : OptionalLong.empty();
+   }
+
+   /**
+    * Resynchronizes a token that has drifted beyond the normal look-ahead window by asking the user for two
+    * consecutive passwords, as suggested in section 7.4 of RFC&nbsp;4226. Requiring two consecutive passwords to match
+    * makes a larger window safe, since a guess is far less likely to match both. Each counter value in the window is
+    * computed only once, and every value is compared in constant time, as in
+    * {@link #verifyCounter(Key, int, long, int)}.
+    *
+    * @param key a secret key to be used to verify the passwords
+    * @param firstPassword the first of two consecutive one-time passwords produced by the token
+    * @param secondPassword the password produced by the token right after {@code firstPassword}
+    * @param counter the counter value the server expects next
+    * @param lookAhead the number of counter values after {@code counter} to search for {@code firstPassword}
+    *
+    * @return the counter value {@code secondPassword} was generated with, or an empty value if the passwords do not
+    * match consecutive counter values in the window; the counter value expected next is the returned value plus one
+    *
+    * @throws InvalidKeyException if the given key is inappropriate for initializing the {@link Mac} for this generator
+    */
+   public OptionalLong resynchronize(final Key key, final int firstPassword, final int secondPassword, final long counter, final int lookAhead) throws InvalidKeyException {
+       checkLookAhead(lookAhead);
+
+       final MacCache cache = this.getMacCache();
+       final Mac mac = cache.getMac(key);
+
+       int matched = 0;
+       long matchedIndex = 0;
+       int previousEqual = 0;
+
+       for (long i = 0; i <= lookAhead + 1L; i++) {
+           final int current = this.generateOneTimePassword(cache, mac, counter + i);
+           final int firstDifference = current ^ firstPassword;
+           final int secondDifference = current ^ secondPassword;
+
+           // 1 if the previous code is the first password and this code the second, 0 otherwise, without branching.
+           final int equal = previousEqual & (((secondDifference | -secondDifference) >>> 31) ^ 1);
+           final int first = equal & ~matched;
+
+           matchedIndex ^= -(long) first & (matchedIndex ^ i);
+           matched |= equal;
+           previousEqual = ((firstDifference | -firstDifference) >>> 31) ^ 1;
+       }
+
+       return matched == 1 ? OptionalLong.of(counter + matchedIndex) : OptionalLong.empty();
+   }
+
+   private static void checkLookAhead(final int lookAhead) {
+       if (lookAhead < 0) {
+           throw new IllegalArgumentException("Look-ahead window must not be negative.");
+       }
+   }
+
+   /**
+    * Generates a one-time password with a {@link Mac} already initialized with the secret key, re-using the buffers of
+    * the given cache.
+    */
+   int generateOneTimePassword(final MacCache cache, final Mac mac, final long counter) {
+       final byte[] message = cache.counter;
+       long value = counter;
+
+       for (int i = message.length - 1; i >= 0; i--) {
+           message[i] = (byte) value;
+           value >>>= 8;
+       }
+
+       mac.update(message);
 
        try {
-           mac = Mac.getInstance(this.algorithm);
-           mac.init(key);
-       } catch (final NoSuchAlgorithmException e) {
-           // This should never happen since we verify that the algorithm is legit in the constructor.
+           mac.doFinal(cache.hmac, 0);
+       } catch (final ShortBufferException e) {
+           // This should never happen since the buffer is sized by the MAC length of the algorithm.
            throw new RuntimeException(e);
        }
 
-       final ByteBuffer buffer = ByteBuffer.allocate(8);
-       buffer.putLong(0, counter);
+       return this.truncate(cache.hmac);
+   }
 
-       final byte[] hmac = mac.doFinal(buffer.array());
+   /**
+    * Dynamic truncation as specified in section 5.3 of RFC&nbsp;4226.
+    */
+   int truncate(final byte[] hmac) {
        final int offset = hmac[hmac.length - 1] & 0x0f;
 
-       for (int i = 0; i < 4; i++) {
-           // Note that we're re-using the first four bytes of the buffer here; we just ignore the latter four from
-           // here on out.
-           buffer.put(i, hmac[i + offset]);
-       }
-
-       final int hotp = buffer.getInt(0) & 0x7fffffff;
+       final int hotp = ((hmac[offset] & 0x7f) << 24) |
+               ((hmac[offset + 1] & 0xff) << 16) |
+               ((hmac[offset + 2] & 0xff) << 8) |
+               (hmac[offset + 3] & 0xff);
 
        return hotp % this.modDivisor;
    }
 
+   /**
+    * Returns the cache of initialized {@link Mac} instances for the current thread.
+    */
+   MacCache getMacCache() {
+       return this.macCache.get();
+   }
+
+   /**
+    * Discards the initialized {@link Mac} instances, and with them the secret keys, that the current thread keeps for
+    * this generator. The next password generated on this thread initializes them again.
+    */
+   public void clearMacCache() {
+       this.macCache.remove();
+   }
+
    /**
     * Returns the length, in decimal digits, of passwords produced by this generator.
     *
@@ -176,4 +404,70 @@ public class HmacOneTimePasswordGenerator {
    public String getAlgorithm() {
        return this.algorithm;
    }
+
+   /**
+    * Per-thread initialized {@link Mac} instances for one algorithm, keyed by secret key, and the buffers used to
+    * compute a password. Not thread-safe; instances are confined to the thread that created them.
+    */
+   static final class MacCache {
+       private final String algorithm;
+
+       final byte[] counter = new byte[8];
+       final byte[] hmac;
+
+       private final LinkedHashMap<Key, Mac> macs = new LinkedHashMap<>(MAX_CACHED_KEYS_PER_THREAD, 0.75f, true);
+
+       private Key lastKey;
+       private Mac lastMac;
+
+       private MacCache(final String algorithm) {
+           this.algorithm = algorithm;
+           this.hmac = new byte[newMac(algorithm).getMacLength()];
+       }
+
+       /**
+        * Returns a {@link Mac} initialized with the given key, re-using a previous initialization when possible.
+        */
+       Mac getMac(final Key key) throws InvalidKeyException {
+           if (key == this.lastKey) {
+               return this.lastMac;
+           }
+
+           Mac mac = this.macs.get(key);
+
+           if (mac == null) {
+               if (this.macs.size() >= MAX_CACHED_KEYS_PER_THREAD) {
+                   final Iterator<Map.Entry<Key, Mac>> eldest = this.macs.entrySet().iterator();
+                   mac = eldest.next().getValue();
+                   eldest.remove();
+               } else {
+                   mac = newMac(this.algorithm);
+               }
+
+               try {
+                   mac.init(key);
+               } catch (final InvalidKeyException e) {
+                   this.lastKey = null;
+                   this.lastMac = null;
+                   throw e;
+               }
+
+               this.macs.put(key, mac);
+           }
+
+           this.lastKey = key;
+           this.lastMac = mac;
+
+           return mac;
+       }
+
+       private static Mac newMac(final String algorithm) {
+           try {
+               return Mac.getInstance(algorithm);
+           } catch (final NoSuchAlgorithmException e) {
+               // This should never happen since we verify that the algorithm is legit in the constructor.
+               throw new RuntimeException(e);
+           }
+       }
+   }
 }
\ No newline at end of file
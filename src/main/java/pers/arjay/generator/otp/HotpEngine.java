@@ -0,0 +1,499 @@
+package pers.arjay.generator.otp;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * <p>A specialized HMAC-based one-time password engine for a single secret key. One-time password messages are always
+ * an eight-byte counter, so the engine hashes the inner and outer padded keys once, when it is created, and computes
+ * each password with exactly one compression of the inner block and one of the outer block, with no allocation.</p>
+ *
+ * <p>Supports {@value TimeBasedOneTimePasswordGenerator#TOTP_ALGORITHM_HMAC_SHA1},
+ * {@value TimeBasedOneTimePasswordGenerator#TOTP_ALGORITHM_HMAC_SHA256} and
+ * {@value TimeBasedOneTimePasswordGenerator#TOTP_ALGORITHM_HMAC_SHA512}; passwords are identical to those of
+ * {@link HmacOneTimePasswordGenerator} with the same algorithm, password length and key.</p>
+ *
+ * <p>The JRE may compute SHA-1 and SHA-256 with hardware intrinsics ({@code -XX:+UseSHA}); there, the per-thread
+ * {@link javax.crypto.Mac} instances of {@link HmacOneTimePasswordGenerator} can outperform this engine, so measure with
+ * the target JRE before choosing one over the other. HmacSHA512 and JREs without SHA intrinsics benefit the most.</p>
+ *
+ * <p>{@code HotpEngine} instances are immutable and thread-safe. Because they hold state derived from the secret key,
+ * they should be kept only as long as the key itself.</p>
+ *
+ * @see HmacOneTimePasswordGenerator#newEngine(Key)
+ */
+public abstract class HotpEngine {
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private final String algorithm;
+    private final int modDivisor;
+
+    private HotpEngine(final String algorithm, final int passwordLength) {
+        this.algorithm = algorithm;
+        this.modDivisor = HmacOneTimePasswordGenerator.modDivisor(passwordLength);
+    }
+
+    /**
+     * Creates a new engine for the given algorithm, password length, and raw secret key.
+     *
+     * @param algorithm one of {@code HmacSHA1}, {@code HmacSHA256}, or {@code HmacSHA512}
+     * @param passwordLength the length, in decimal digits, of the one-time passwords to be generated; must be between
+     * 6 and 8, inclusive
+     * @param secret the raw secret key
+     *
+     * @return a new engine for the given key
+     *
+     * @throws NoSuchAlgorithmException if the given algorithm is not supported by this engine
+     */
+    public static HotpEngine of(final String algorithm, final int passwordLength, final byte[] secret) throws NoSuchAlgorithmException {
+        if (TimeBasedOneTimePasswordGenerator.TOTP_ALGORITHM_HMAC_SHA1.equalsIgnoreCase(algorithm)) {
+            return new Sha1(passwordLength, secret);
+        } else if (TimeBasedOneTimePasswordGenerator.TOTP_ALGORITHM_HMAC_SHA256.equalsIgnoreCase(algorithm)) {
+            return new Sha256(passwordLength, secret);
+        } else if (TimeBasedOneTimePasswordGenerator.TOTP_ALGORITHM_HMAC_SHA512.equalsIgnoreCase(algorithm)) {
+            return new Sha512(passwordLength, secret);
+        }
+
+        throw new NoSuchAlgorithmException("Unsupported HOTP engine algorithm: " + algorithm);
+    }
+
+    /**
+     * Creates a new engine for the given algorithm, password length, and key.
+     *
+     * @throws InvalidKeyException if the key does not expose its raw encoding
+     * @throws NoSuchAlgorithmException if the given algorithm is not supported by this engine
+     *
+     * @see #of(String, int, byte[])
+     */
+    public static HotpEngine of(final String algorithm, final int passwordLength, final Key key) throws InvalidKeyException, NoSuchAlgorithmException {
+        final byte[] secret = key.getEncoded();
+
+        if (secret == null || !"RAW".equalsIgnoreCase(key.getFormat())) {
+            throw new InvalidKeyException("HOTP engine requires a key with a raw encoding.");
+        }
+
+        try {
+            return of(algorithm, passwordLength, secret);
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+
+    /**
+     * Generates a one-time password for the given counter value.
+     *
+     * @param counter the counter value to be used to generate the password
+     *
+     * @return an integer representation of a one-time password; callers will need to format the password for display
+     * on their own
+     */
+    public int generateOneTimePassword(final long counter) {
+        final int hotp = this.truncate(counter, scratch.get()) & 0x7fffffff;
+        return hotp % this.modDivisor;
+    }
+
+    /**
+     * Returns the name of the HMAC algorithm used by this engine.
+     *
+     * @return the name of the HMAC algorithm used by this engine
+     */
+    public String getAlgorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * Computes the HMAC of the counter and returns the four bytes selected by dynamic truncation as a big-endian
+     * integer.
+     */
+    abstract int truncate(long counter, Scratch scratch);
+
+    /**
+     * Pads the secret key to the block size, hashing it first if it is longer than a block, as specified in
+     * RFC&nbsp;2104.
+     */
+    private static byte[] blockKey(final String digest, final int blockSize, final byte[] secret) {
+        final byte[] block = new byte[blockSize];
+
+        if (secret.length > blockSize) {
+            try {
+                final byte[] hashed = MessageDigest.getInstance(digest).digest(secret);
+                System.arraycopy(hashed, 0, block, 0, hashed.length);
+                Arrays.fill(hashed, (byte) 0);
+            } catch (final NoSuchAlgorithmException e) {
+                // This should never happen since every JRE is required to support SHA-1, SHA-256 and SHA-512.
+                throw new RuntimeException(e);
+            }
+        } else {
+            System.arraycopy(secret, 0, block, 0, secret.length);
+        }
+
+        return block;
+    }
+
+    /**
+     * Per-thread working arrays shared by all engines.
+     */
+    static final class Scratch {
+        final int[] words = new int[80];
+        final int[] state = new int[8];
+        final long[] longWords = new long[80];
+        final long[] longState = new long[8];
+    }
+
+    private static final class Sha1 extends HotpEngine {
+        private static final int[] IV = { 0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476, 0xc3d2e1f0 };
+
+        private final int[] innerState = new int[5];
+        private final int[] outerState = new int[5];
+
+        private Sha1(final int passwordLength, final byte[] secret) {
+            super(TimeBasedOneTimePasswordGenerator.TOTP_ALGORITHM_HMAC_SHA1, passwordLength);
+
+            final byte[] block = blockKey("SHA-1", 64, secret);
+            final int[] words = new int[80];
+
+            padState(block, (byte) 0x36, words, this.innerState);
+            padState(block, (byte) 0x5c, words, this.outerState);
+
+            Arrays.fill(block, (byte) 0);
+            Arrays.fill(words, 0);
+        }
+
+        private static void padState(final byte[] block, final byte pad, final int[] words, final int[] state) {
+            for (int i = 0; i < 16; i++) {
+                words[i] = ((block[4 * i] ^ pad) & 0xff) << 24 |
+                        ((block[4 * i + 1] ^ pad) & 0xff) << 16 |
+                        ((block[4 * i + 2] ^ pad) & 0xff) << 8 |
+                        ((block[4 * i + 3] ^ pad) & 0xff);
+            }
+
+            System.arraycopy(IV, 0, state, 0, 5);
+            compress(state, words);
+        }
+
+        @Override
+        int truncate(final long counter, final Scratch scratch) {
+            final int[] w = scratch.words;
+            final int[] h = scratch.state;
+
+            // Inner hash: the counter, then padding for a 64 + 8 byte message.
+            System.arraycopy(this.innerState, 0, h, 0, 5);
+            w[0] = (int) (counter >>> 32);
+            w[1] = (int) counter;
+            w[2] = 0x80000000;
+            Arrays.fill(w, 3, 15, 0);
+            w[15] = (64 + 8) * 8;
+            compress(h, w);
+
+            // Outer hash: the inner digest, then padding for a 64 + 20 byte message.
+            System.arraycopy(h, 0, w, 0, 5);
+            System.arraycopy(this.outerState, 0, h, 0, 5);
+            w[5] = 0x80000000;
+            Arrays.fill(w, 6, 15, 0);
+            w[15] = (64 + 20) * 8;
+            compress(h, w);
+
+            return intAt(h, h[4] & 0x0f);
+        }
+
+        private static void compress(final int[] h, final int[] w) {
+            for (int t = 16; t < 80; t++) {
+                w[t] = Integer.rotateLeft(w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16], 1);
+            }
+
+            int a = h[0], b = h[1], c = h[2], d = h[3], e = h[4];
+
+            int t = 0;
+
+            for (; t < 20; t++) {
+                final int temp = Integer.rotateLeft(a, 5) + ((b & c) | (~b & d)) + e + 0x5a827999 + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+
+            for (; t < 40; t++) {
+                final int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0x6ed9eba1 + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+
+            for (; t < 60; t++) {
+                final int temp = Integer.rotateLeft(a, 5) + ((b & c) | (b & d) | (c & d)) + e + 0x8f1bbcdc + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+
+            for (; t < 80; t++) {
+                final int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0xca62c1d6 + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+
+            h[0] += a;
+            h[1] += b;
+            h[2] += c;
+            h[3] += d;
+            h[4] += e;
+        }
+    }
+
+    private static final class Sha256 extends HotpEngine {
+        private static final int[] IV = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+        };
+
+        private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+        };
+
+        private final int[] innerState = new int[8];
+        private final int[] outerState = new int[8];
+
+        private Sha256(final int passwordLength, final byte[] secret) {
+            super(TimeBasedOneTimePasswordGenerator.TOTP_ALGORITHM_HMAC_SHA256, passwordLength);
+
+            final byte[] block = blockKey("SHA-256", 64, secret);
+            final int[] words = new int[64];
+
+            padState(block, (byte) 0x36, words, this.innerState);
+            padState(block, (byte) 0x5c, words, this.outerState);
+
+            Arrays.fill(block, (byte) 0);
+            Arrays.fill(words, 0);
+        }
+
+        private static void padState(final byte[] block, final byte pad, final int[] words, final int[] state) {
+            for (int i = 0; i < 16; i++) {
+                words[i] = ((block[4 * i] ^ pad) & 0xff) << 24 |
+                        ((block[4 * i + 1] ^ pad) & 0xff) << 16 |
+                        ((block[4 * i + 2] ^ pad) & 0xff) << 8 |
+                        ((block[4 * i + 3] ^ pad) & 0xff);
+            }
+
+            System.arraycopy(IV, 0, state, 0, 8);
+            compress(state, words);
+        }
+
+        @Override
+        int truncate(final long counter, final Scratch scratch) {
+            final int[] w = scratch.words;
+            final int[] h = scratch.state;
+
+            // Inner hash: the counter, then padding for a 64 + 8 byte message.
+            System.arraycopy(this.innerState, 0, h, 0, 8);
+            w[0] = (int) (counter >>> 32);
+            w[1] = (int) counter;
+            w[2] = 0x80000000;
+            Arrays.fill(w, 3, 15, 0);
+            w[15] = (64 + 8) * 8;
+            compress(h, w);
+
+            // Outer hash: the inner digest, then padding for a 64 + 32 byte message.
+            System.arraycopy(h, 0, w, 0, 8);
+            System.arraycopy(this.outerState, 0, h, 0, 8);
+            w[8] = 0x80000000;
+            Arrays.fill(w, 9, 15, 0);
+            w[15] = (64 + 32) * 8;
+            compress(h, w);
+
+            return intAt(h, h[7] & 0x0f);
+        }
+
+        private static void compress(final int[] h, final int[] w) {
+            for (int t = 16; t < 64; t++) {
+                final int s0 = Integer.rotateRight(w[t - 15], 7) ^ Integer.rotateRight(w[t - 15], 18) ^ (w[t - 15] >>> 3);
+                final int s1 = Integer.rotateRight(w[t - 2], 17) ^ Integer.rotateRight(w[t - 2], 19) ^ (w[t - 2] >>> 10);
+                w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+            }
+
+            int a = h[0], b = h[1], c = h[2], d = h[3], e = h[4], f = h[5], g = h[6], hh = h[7];
+
+            for (int t = 0; t < 64; t++) {
+                final int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+                final int ch = (e & f) ^ (~e & g);
+                final int temp1 = hh + s1 + ch + K[t] + w[t];
+                final int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+                final int maj = (a & b) ^ (a & c) ^ (b & c);
+                final int temp2 = s0 + maj;
+
+                hh = g;
+                g = f;
+                f = e;
+                e = d + temp1;
+                d = c;
+                c = b;
+                b = a;
+                a = temp1 + temp2;
+            }
+
+            h[0] += a;
+            h[1] += b;
+            h[2] += c;
+            h[3] += d;
+            h[4] += e;
+            h[5] += f;
+            h[6] += g;
+            h[7] += hh;
+        }
+    }
+
+    private static final class Sha512 extends HotpEngine {
+        private static final long[] IV = {
+            0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+            0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+        };
+
+        private static final long[] K = {
+            0x428a2f98d728ae22L, 0x7137449123ef65cdL, 0xb5c0fbcfec4d3b2fL, 0xe9b5dba58189dbbcL,
+            0x3956c25bf348b538L, 0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L,
+            0xd807aa98a3030242L, 0x12835b0145706fbeL, 0x243185be4ee4b28cL, 0x550c7dc3d5ffb4e2L,
+            0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L, 0x9bdc06a725c71235L, 0xc19bf174cf692694L,
+            0xe49b69c19ef14ad2L, 0xefbe4786384f25e3L, 0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L,
+            0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L, 0x76f988da831153b5L,
+            0x983e5152ee66dfabL, 0xa831c66d2db43210L, 0xb00327c898fb213fL, 0xbf597fc7beef0ee4L,
+            0xc6e00bf33da88fc2L, 0xd5a79147930aa725L, 0x06ca6351e003826fL, 0x142929670a0e6e70L,
+            0x27b70a8546d22ffcL, 0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL, 0x53380d139d95b3dfL,
+            0x650a73548baf63deL, 0x766a0abb3c77b2a8L, 0x81c2c92e47edaee6L, 0x92722c851482353bL,
+            0xa2bfe8a14cf10364L, 0xa81a664bbc423001L, 0xc24b8b70d0f89791L, 0xc76c51a30654be30L,
+            0xd192e819d6ef5218L, 0xd69906245565a910L, 0xf40e35855771202aL, 0x106aa07032bbd1b8L,
+            0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L, 0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L,
+            0x391c0cb3c5c95a63L, 0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L,
+            0x748f82ee5defb2fcL, 0x78a5636f43172f60L, 0x84c87814a1f0ab72L, 0x8cc702081a6439ecL,
+            0x90befffa23631e28L, 0xa4506cebde82bde9L, 0xbef9a3f7b2c67915L, 0xc67178f2e372532bL,
+            0xca273eceea26619cL, 0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L,
+            0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L, 0x113f9804bef90daeL, 0x1b710b35131c471bL,
+            0x28db77f523047d84L, 0x32caab7b40c72493L, 0x3c9ebe0a15c9bebcL, 0x431d67c49c100d4cL,
+            0x4cc5d4becb3e42b6L, 0x597f299cfc657e2aL, 0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L
+        };
+
+        private final long[] innerState = new long[8];
+        private final long[] outerState = new long[8];
+
+        private Sha512(final int passwordLength, final byte[] secret) {
+            super(TimeBasedOneTimePasswordGenerator.TOTP_ALGORITHM_HMAC_SHA512, passwordLength);
+
+            final byte[] block = blockKey("SHA-512", 128, secret);
+            final long[] words = new long[80];
+
+            padState(block, (byte) 0x36, words, this.innerState);
+            padState(block, (byte) 0x5c, words, this.outerState);
+
+            Arrays.fill(block, (byte) 0);
+            Arrays.fill(words, 0);
+        }
+
+        private static void padState(final byte[] block, final byte pad, final long[] words, final long[] state) {
+            for (int i = 0; i < 16; i++) {
+                long word = 0;
+                for (int j = 0; j < 8; j++) {
+                    word = word << 8 | ((block[8 * i + j] ^ pad) & 0xff);
+                }
+                words[i] = word;
+            }
+
+            System.arraycopy(IV, 0, state, 0, 8);
+            compress(state, words);
+        }
+
+        @Override
+        int truncate(final long counter, final Scratch scratch) {
+            final long[] w = scratch.longWords;
+            final long[] h = scratch.longState;
+
+            // Inner hash: the counter, then padding for a 128 + 8 byte message.
+            System.arraycopy(this.innerState, 0, h, 0, 8);
+            w[0] = counter;
+            w[1] = 0x8000000000000000L;
+            Arrays.fill(w, 2, 15, 0);
+            w[15] = (128 + 8) * 8;
+            compress(h, w);
+
+            // Outer hash: the inner digest, then padding for a 128 + 64 byte message.
+            System.arraycopy(h, 0, w, 0, 8);
+            System.arraycopy(this.outerState, 0, h, 0, 8);
+            w[8] = 0x8000000000000000L;
+            Arrays.fill(w, 9, 15, 0);
+            w[15] = (128 + 64) * 8;
+            compress(h, w);
+
+            final int offset = (int) h[7] & 0x0f;
+            final int index = offset >>> 3;
+            final int shift = (offset & 7) * 8;
+
+            // The four bytes may span two words; the following word always exists since the offset is at most 15.
+            final long bytes = shift == 0 ? h[index] : h[index] << shift | h[index + 1] >>> (64 - shift);
+
+            return (int) (bytes >>> 32);
+        }
+
+        private static void compress(final long[] h, final long[] w) {
+            for (int t = 16; t < 80; t++) {
+                final long s0 = Long.rotateRight(w[t - 15], 1) ^ Long.rotateRight(w[t - 15], 8) ^ (w[t - 15] >>> 7);
+                final long s1 = Long.rotateRight(w[t - 2], 19) ^ Long.rotateRight(w[t - 2], 61) ^ (w[t - 2] >>> 6);
+                w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+            }
+
+            long a = h[0], b = h[1], c = h[2], d = h[3], e = h[4], f = h[5], g = h[6], hh = h[7];
+
+            for (int t = 0; t < 80; t++) {
+                final long s1 = Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18) ^ Long.rotateRight(e, 41);
+                final long ch = (e & f) ^ (~e & g);
+                final long temp1 = hh + s1 + ch + K[t] + w[t];
+                final long s0 = Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34) ^ Long.rotateRight(a, 39);
+                final long maj = (a & b) ^ (a & c) ^ (b & c);
+                final long temp2 = s0 + maj;
+
+                hh = g;
+                g = f;
+                f = e;
+                e = d + temp1;
+                d = c;
+                c = b;
+                b = a;
+                a = temp1 + temp2;
+            }
+
+            h[0] += a;
+            h[1] += b;
+            h[2] += c;
+            h[3] += d;
+            h[4] += e;
+            h[5] += f;
+            h[6] += g;
+            h[7] += hh;
+        }
+    }
+
+    /**
+     * Returns the four bytes of a big-endian digest starting at the given byte offset as an integer.
+     */
+    private static int intAt(final int[] digest, final int offset) {
+        final int index = offset >>> 2;
+        final int shift = (offset & 3) * 8;
+
+        // The following word always exists since the offset is at most 15 and the digest has at least five words.
+        return shift == 0 ? digest[index] : digest[index] << shift | digest[index + 1] >>> (32 - shift);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package pers.arjay.generator.otp;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>An in-process {@link UsedCodeStore} that keeps one bucket of used key IDs per time step in a ring. A bucket is
+ * replaced, with a compare-and-set and without locking, as soon as a time step that maps to the same slot is used, so
+ * expired steps evict themselves and memory is bounded by the ring size times the per-step capacity.</p>
+ *
+ * <p>The ring keeps {@code 2 * window + 2} steps, enough to hold every step that
+ * {@link TimeBasedOneTimePasswordGenerator#verify(java.security.Key, int, long, int)} can still accept with the same
+ * window. A step whose slot has already been reused, or a step whose bucket is full, is reported as used, so that
+ * verification fails closed. A full bucket rejects every further key until its step expires, so the capacity should
+ * exceed the number of passwords accepted in a single step at peak load.</p>
+ *
+ * <p>{@code InMemoryUsedCodeStore} instances are thread-safe. They only protect a single process; deployments with
+ * several verifying processes should use a shared store such as {@link RedisUsedCodeStore}.</p>
+ */
+public class InMemoryUsedCodeStore implements UsedCodeStore {
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final int maxKeysPerStep;
+
+    /**
+     * Creates a store for verification with the given window.
+     *
+     * @param window the number of time steps accepted before and after the current time step
+     * @param maxKeysPerStep the maximum number of keys remembered for a single time step
+     */
+    public InMemoryUsedCodeStore(final int window, final int maxKeysPerStep) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Window must not be negative.");
+        }
+
+        if (maxKeysPerStep <= 0) {
+            throw new IllegalArgumentException("Maximum keys per step must be positive.");
+        }
+
+        this.buckets = new AtomicReferenceArray<>(2 * window + 2);
+        this.maxKeysPerStep = maxKeysPerStep;
+    }
+
+    @Override
+    public boolean markUsed(final String keyId, final long timeStep) {
+        final Bucket bucket = this.bucket(timeStep);
+
+        if (bucket == null) {
+            return false;
+        }
+
+        // Reserve a place before adding, so that concurrent callers can never push a bucket past its capacity.
+        if (bucket.size.incrementAndGet() > this.maxKeysPerStep) {
+            bucket.size.decrementAndGet();
+            return false;
+        }
+
+        if (!bucket.keyIds.add(keyId)) {
+            bucket.size.decrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the bucket of the given time step, replacing an expired bucket in its slot, or {@code null} if the slot
+     * already holds a later time step.
+     */
+    private Bucket bucket(final long timeStep) {
+        final int slot = (int) Math.floorMod(timeStep, (long) this.buckets.length());
+
+        while (true) {
+            final Bucket bucket = this.buckets.get(slot);
+
+            if (bucket != null && bucket.timeStep == timeStep) {
+                return bucket;
+            }
+
+            if (bucket != null && bucket.timeStep > timeStep) {
+                return null;
+            }
+
+            final Bucket replacement = new Bucket(timeStep);
+
+            if (this.buckets.compareAndSet(slot, bucket, replacement)) {
+                return replacement;
+            }
+        }
+    }
+
+    private static final class Bucket {
+        private final long timeStep;
+        private final Set<String> keyIds = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private Bucket(final long timeStep) {
+            this.timeStep = timeStep;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,260 @@
+package pers.arjay.generator.otp;
+
+import java.security.InvalidKeyException;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Protects one-time password verification against brute-force guessing by counting failed attempts per key and
+ * locking the key out with exponential backoff. After {@code maxFailures} consecutive failures a key is locked for the
+ * base lockout; every further failure doubles the lockout, up to the maximum. A successful verification resets the
+ * key, and failures older than the failure expiry are forgotten.</p>
+ *
+ * <pre>
+ * OneTimePasswordGuard guard = new OneTimePasswordGuard(5, 30, 3600, TimeUnit.SECONDS, 15, TimeUnit.MINUTES);
+ *
+ * OptionalInt offset = guard.verify(accountId, () -&gt; generator.verify(key, password, new Date(), 1));
+ *
+ * if (!offset.isPresent() &amp;&amp; guard.isLocked(accountId)) {
+ *     // tell the user to retry after guard.getLockRemaining(accountId, TimeUnit.SECONDS) seconds
+ * }
+ * </pre>
+ *
+ * <p>Counters are kept in a {@link ConcurrentHashMap} and each key's entry is updated atomically with
+ * {@link ConcurrentMap#compute}, which locks only that entry's bin, so concurrent logins for different keys almost never
+ * wait for each other, and reading the state of a key takes no lock at all. Entries whose failures and lockouts have expired are purged as
+ * failures are recorded.</p>
+ *
+ * <p>{@code OneTimePasswordGuard} instances are thread-safe.</p>
+ */
+public class OneTimePasswordGuard {
+
+    /**
+     * A one-time password verification guarded by {@link OneTimePasswordGuard#verify(String, Verification)}.
+     */
+    @FunctionalInterface
+    public interface Verification {
+        OptionalInt verify() throws InvalidKeyException;
+    }
+
+    /**
+     * How many recorded failures pass between purges of expired entries.
+     */
+    private static final int PURGE_INTERVAL = 1024;
+
+    private final int maxFailures;
+    private final long baseLockoutMillis;
+    private final long maxLockoutMillis;
+    private final long failureExpiryMillis;
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<String, Attempts> attempts = new ConcurrentHashMap<>();
+    private final AtomicInteger failuresSincePurge = new AtomicInteger();
+
+    /**
+     * Creates a new guard.
+     *
+     * @param maxFailures the number of consecutive failures after which a key is locked
+     * @param baseLockout the lockout after {@code maxFailures} failures
+     * @param maxLockout the longest lockout
+     * @param lockoutUnit the unit of {@code baseLockout} and {@code maxLockout}
+     * @param failureExpiry how long a failure is remembered
+     * @param failureExpiryUnit the unit of {@code failureExpiry}
+     */
+    public OneTimePasswordGuard(final int maxFailures, final long baseLockout, final long maxLockout, final TimeUnit lockoutUnit,
+            final long failureExpiry, final TimeUnit failureExpiryUnit) {
+        this(maxFailures, lockoutUnit.toMillis(baseLockout), lockoutUnit.toMillis(maxLockout),
+                failureExpiryUnit.toMillis(failureExpiry), System::currentTimeMillis);
+    }
+
+    OneTimePasswordGuard(final int maxFailures, final long baseLockoutMillis, final long maxLockoutMillis, final long failureExpiryMillis,
+            final LongSupplier clock) {
+        if (maxFailures <= 0) {
+            throw new IllegalArgumentException("Maximum failures must be positive.");
+        }
+
+        this.maxFailures = maxFailures;
+        this.baseLockoutMillis = baseLockoutMillis;
+        this.maxLockoutMillis = maxLockoutMillis;
+        this.failureExpiryMillis = failureExpiryMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Runs the verification unless the key is locked, and records its outcome. The attempt is counted as a failure
+     * before the verification runs and rolled back if it succeeds, so concurrent guesses for one key cannot all pass
+     * the lock check before any of them is counted.
+     *
+     * @param keyId an identifier of the key, such as an account ID
+     * @param verification the verification to run
+     *
+     * @return the result of the verification, or an empty value without running it if the key is locked
+     *
+     * @throws InvalidKeyException if the verification throws it; no failure is recorded in that case
+     */
+    public OptionalInt verify(final String keyId, final Verification verification) throws InvalidKeyException {
+        if (!this.countFailure(keyId, true)) {
+            return OptionalInt.empty();
+        }
+
+        boolean completed = false;
+
+        try {
+            final OptionalInt result = verification.verify();
+            completed = true;
+
+            if (result.isPresent()) {
+                this.recordSuccess(keyId);
+            }
+
+            return result;
+        } finally {
+            if (!completed) {
+                this.rollBackFailure(keyId);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given key is currently locked out.
+     */
+    public boolean isLocked(final String keyId) {
+        return this.getLockRemaining(keyId, TimeUnit.MILLISECONDS) > 0;
+    }
+
+    /**
+     * Returns how long the given key remains locked out, or zero if it is not locked.
+     */
+    public long getLockRemaining(final String keyId, final TimeUnit timeUnit) {
+        final Attempts attempts = this.attempts.get(keyId);
+
+        if (attempts == null) {
+            return 0;
+        }
+
+        final long remaining = attempts.lockedUntil - this.clock.getAsLong();
+        return remaining > 0 ? timeUnit.convert(remaining, TimeUnit.MILLISECONDS) : 0;
+    }
+
+    /**
+     * Returns the number of consecutive, unexpired failures of the given key.
+     */
+    public int getFailures(final String keyId) {
+        final Attempts attempts = this.attempts.get(keyId);
+        return attempts == null || attempts.isExpired(this.clock.getAsLong(), this.failureExpiryMillis) ? 0 : attempts.failures;
+    }
+
+    /**
+     * Records a failed verification, locking the key out if it has failed too often.
+     */
+    public void recordFailure(final String keyId) {
+        this.countFailure(keyId, false);
+    }
+
+    /**
+     * Records a successful verification, resetting the failures of the key.
+     */
+    public void recordSuccess(final String keyId) {
+        this.attempts.remove(keyId);
+    }
+
+    /**
+     * Removes the entries of keys that are neither locked nor have unexpired failures.
+     */
+    public void purgeExpired() {
+        final long now = this.clock.getAsLong();
+
+        for (final String keyId : this.attempts.keySet()) {
+            // Decided per entry under the entry's lock, so that a failure counted concurrently is never purged.
+            this.attempts.computeIfPresent(keyId, (id, attempts) -> attempts.lockedUntil <= now && attempts.isExpired(now, this.failureExpiryMillis) ? null : attempts);
+        }
+    }
+
+    /**
+     * Counts a failure of the given key, resetting expired failures and locking the key out if it has failed too
+     * often, all in one atomic update of the key's entry.
+     *
+     * @param rejectIfLocked whether to leave a locked key unchanged instead of counting the failure
+     *
+     * @return {@code false} if the key was locked and {@code rejectIfLocked} is set, or {@code true} if the failure was
+     * counted
+     */
+    private boolean countFailure(final String keyId, final boolean rejectIfLocked) {
+        final long now = this.clock.getAsLong();
+        final boolean[] counted = new boolean[1];
+
+        this.attempts.compute(keyId, (id, existing) -> {
+            final Attempts attempts = existing != null ? existing : new Attempts();
+
+            if (rejectIfLocked && attempts.lockedUntil > now) {
+                return attempts;
+            }
+
+            if (attempts.isExpired(now, this.failureExpiryMillis)) {
+                attempts.failures = 0;
+            }
+
+            final int failures = ++attempts.failures;
+            attempts.lastFailure = Math.max(attempts.lastFailure, now);
+
+            if (failures >= this.maxFailures) {
+                attempts.lockedUntil = Math.max(attempts.lockedUntil, now + this.lockout(failures - this.maxFailures));
+            }
+
+            counted[0] = true;
+            return attempts;
+        });
+
+        if (this.failuresSincePurge.incrementAndGet() % PURGE_INTERVAL == 0) {
+            this.purgeExpired();
+        }
+
+        return counted[0];
+    }
+
+    /**
+     * Takes back a failure counted by {@link #verify(String, Verification)} for a verification that did not complete.
+     */
+    private void rollBackFailure(final String keyId) {
+        this.attempts.computeIfPresent(keyId, (id, attempts) -> {
+            if (--attempts.failures <= 0) {
+                return null;
+            }
+
+            if (attempts.failures < this.maxFailures) {
+                attempts.lockedUntil = 0;
+            }
+
+            return attempts;
+        });
+    }
+
+    /**
+     * The lockout after {@code maxFailures + excess} failures: the base lockout doubled {@code excess} times, capped at
+     * the maximum lockout.
+     */
+    private long lockout(final int excess) {
+        if (excess >= Long.numberOfLeadingZeros(this.baseLockoutMillis) - 1) {
+            return this.maxLockoutMillis;
+        }
+        return Math.min(this.baseLockoutMillis << excess, this.maxLockoutMillis);
+    }
+
+    /**
+     * The state of one key; only modified inside {@link ConcurrentMap#compute} and related methods, which lock the
+     * entry, and read without locking.
+     */
+    private static final class Attempts {
+        private volatile int failures;
+        private volatile long lastFailure;
+        private volatile long lockedUntil;
+
+        private boolean isExpired(final long now, final long failureExpiryMillis) {
+            return now - this.lastFailure > failureExpiryMillis;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package pers.arjay.generator.otp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import pers.arjay.serializer.PrefixKeyRedisSerializer;
+
+/**
+ * <p>A {@link UsedCodeStore} shared by several processes through Redis. Each used time step is stored as
+ * {@code <prefix><keyId>:<timeStep>} with a single {@code SET NX PX} command, so marking a step costs one round trip
+ * and the entry expires on its own once the step can no longer be accepted.</p>
+ *
+ * <p>The expiry should be at least {@code (2 * window + 1)} time steps; see
+ * {@link #RedisUsedCodeStore(RedisOperations, TimeBasedOneTimePasswordGenerator, int)}.</p>
+ */
+public class RedisUsedCodeStore implements UsedCodeStore {
+
+    /**
+     * The key prefix used when no key serializer is given.
+     */
+    public static final String DEFAULT_PREFIX = "otp:used:";
+
+    private static final byte[] USED = "1".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisOperations<?, ?> redisOperations;
+    private final RedisSerializer<String> keySerializer;
+    private final Expiration expiration;
+
+    /**
+     * Creates a store whose entries expire once no step in the verification window can still match them.
+     *
+     * @param redisOperations the Redis template used to obtain connections
+     * @param generator the generator whose time step is used
+     * @param window the number of time steps accepted before and after the current time step
+     */
+    public RedisUsedCodeStore(final RedisOperations<?, ?> redisOperations, final TimeBasedOneTimePasswordGenerator generator, final int window) {
+        this(redisOperations, new PrefixKeyRedisSerializer(DEFAULT_PREFIX),
+                generator.getTimeStep(TimeUnit.MILLISECONDS) * (2 * window + 1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a store with the given key serializer and expiry.
+     *
+     * @param redisOperations the Redis template used to obtain connections
+     * @param keySerializer the serializer of the {@code <keyId>:<timeStep>} keys, typically a
+     * {@link PrefixKeyRedisSerializer}
+     * @param timeToLive how long a used time step is remembered
+     * @param timeUnit the unit of {@code timeToLive}
+     */
+    public RedisUsedCodeStore(final RedisOperations<?, ?> redisOperations, final RedisSerializer<String> keySerializer, final long timeToLive, final TimeUnit timeUnit) {
+        this.redisOperations = redisOperations;
+        this.keySerializer = keySerializer;
+        this.expiration = Expiration.from(timeToLive, timeUnit);
+    }
+
+    @Override
+    public boolean markUsed(final String keyId, final long timeStep) {
+        final byte[] key = this.keySerializer.serialize(keyId + ':' + timeStep);
+
+        final Boolean stored = this.redisOperations.execute(
+                (RedisCallback<Boolean>) connection -> connection.set(key, USED, this.expiration, SetOption.ifAbsent()));
+
+        return Boolean.TRUE.equals(stored);
+    }
+}
\ No newline at end of file
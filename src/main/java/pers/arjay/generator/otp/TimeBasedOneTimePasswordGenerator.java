@@ -6,6 +6,8 @@ import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.Date;
+import java.util.OptionalInt;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 /* Copyright (c) 2016 Jon Chambers
@@ -59,6 +61,12 @@ public class TimeBasedOneTimePasswordGenerator extends HmacOneTimePasswordGenera
      */
     public static final String TOTP_ALGORITHM_HMAC_SHA512 = "HmacSHA512";
 
+    /**
+     * The value returned by {@link #verify(Key[], int[], Date, int)} for a password that does not match any step in
+     * the window.
+     */
+    public static final int NO_MATCH = Integer.MIN_VALUE;
+
     /**
      * Constructs a new time-based one-time password generator with a default time-step (30 seconds), password length
      * ({@value com.eatthepath.otp.HmacOneTimePasswordGenerator#DEFAULT_PASSWORD_LENGTH} decimal digits), and HMAC
@@ -148,7 +156,146 @@ public class TimeBasedOneTimePasswordGenerator extends HmacOneTimePasswordGenera
     public int generateOneTimePassword(final Key key, final LocalDateTime localDateTime) throws InvalidKeyException {
         return this.generateOneTimePassword(key, localDateTime.toInstant(ZoneOffset.UTC).toEpochMilli() / this.timeStepMillis);
     }
+
+    /**
+     * Generates one-time passwords for many keys at the same timestamp, spreading the work across the common
+     * {@link ForkJoinPool}.
+     *
+     * @param keys the secret keys to be used to generate the passwords
+     * @param timestamp the timestamp for which to generate the passwords
+     *
+     * @return the password for each key, in the same order as the keys
+     *
+     * @throws InvalidKeyException if any of the given keys is inappropriate for initializing the {@link Mac} for this
+     * generator
+     */
+    public int[] generateOneTimePasswords(final Key[] keys, final Date timestamp) throws InvalidKeyException {
+        return this.generateOneTimePasswords(keys, timestamp.getTime() / this.timeStepMillis);
+    }
+
+    /**
+     * Verifies one-time passwords for many keys at the same timestamp, spreading the work across the common
+     * {@link ForkJoinPool}.
+     *
+     * @param keys the secret keys to be used to verify the passwords
+     * @param passwords the password received for each key; must have the same length as {@code keys}
+     * @param timestamp the timestamp at which the passwords were received
+     * @param window the number of time steps to accept before and after the current time step
+     *
+     * @return for each key, the offset of the matched step as returned by {@link #verify(Key, int, Date, int)}, or
+     * {@link #NO_MATCH} if the password does not match
+     *
+     * @throws InvalidKeyException if any of the given keys is inappropriate for initializing the {@link Mac} for this
+     * generator
+     */
+    public int[] verify(final Key[] keys, final int[] passwords, final Date timestamp, final int window) throws InvalidKeyException {
+        if (keys.length != passwords.length) {
+            throw new IllegalArgumentException("Keys and passwords must have the same length.");
+        }
+
+        final long timeStep = timestamp.getTime() / this.timeStepMillis;
+
+        return BulkTask.run(ForkJoinPool.commonPool(), keys.length,
+                i -> this.verify(keys[i], passwords[i], timeStep, window).orElse(NO_MATCH));
+    }
+
+    /**
+     * Returns the time step, counted from the epoch, that contains the given timestamp.
+     *
+     * @param timestamp the timestamp for which to return the time step
+     *
+     * @return the counter value used to generate passwords at the given timestamp
+     */
+    public long getTimeStep(final Date timestamp) {
+        return timestamp.getTime() / this.timeStepMillis;
+    }
     
+    /**
+     * Verifies a one-time password against the codes for the time step of the given timestamp and up to
+     * {@code window} time steps before and after it, tolerating clock drift between client and server.
+     *
+     * <p>All candidate codes are computed with a single initialized {@link Mac} and compared in constant time, so the
+     * time taken does not depend on whether or where the password matches. If more than one step matches, the offset
+     * closest to the current step wins, preferring the earlier step.</p>
+     *
+     * @param key a secret key to be used to verify the password
+     * @param password the one-time password to verify
+     * @param timestamp the timestamp at which the password was received
+     * @param window the number of time steps to accept before and after the current time step
+     *
+     * @return the offset, in time steps, of the matched code relative to the timestamp, or an empty value if the
+     * password does not match any step in the window
+     *
+     * @throws InvalidKeyException if the given key is inappropriate for initializing the {@link Mac} for this generator
+     */
+    public OptionalInt verify(final Key key, final int password, final Date timestamp, final int window) throws InvalidKeyException {
+        return this.verify(key, password, timestamp.getTime() / this.timeStepMillis, window);
+    }
+
+    public OptionalInt verify(final Key key, final int password, final LocalDateTime localDateTime, final int window) throws InvalidKeyException {
+        return this.verify(key, password, localDateTime.toInstant(ZoneOffset.UTC).toEpochMilli() / this.timeStepMillis, window);
+    }
+
+    /**
+     * Verifies a one-time password as {@link #verify(Key, int, Date, int)} does, and then rejects it if a password
+     * for the same key and matched time step has already been accepted.
+     *
+     * @param key a secret key to be used to verify the password
+     * @param keyId an identifier of the key, such as an account ID, used to remember accepted time steps
+     * @param password the one-time password to verify
+     * @param timestamp the timestamp at which the password was received
+     * @param window the number of time steps to accept before and after the current time step
+     * @param usedCodes the store of accepted time steps
+     *
+     * @return the offset, in time steps, of the matched code relative to the timestamp, or an empty value if the
+     * password does not match or has already been used
+     *
+     * @throws InvalidKeyException if the given key is inappropriate for initializing the {@link Mac} for this generator
+     */
+    public OptionalInt verify(final Key key, final String keyId, final int password, final Date timestamp, final int window, final UsedCodeStore usedCodes) throws InvalidKeyException {
+        final long timeStep = timestamp.getTime() / this.timeStepMillis;
+        final OptionalInt offset = this.verify(key, password, timeStep, window);
+
+        if (offset.isPresent() && !usedCodes.markUsed(keyId, timeStep + offset.getAsInt())) {
+            return OptionalInt.empty();
+        }
+
+        return offset;
+    }
+
+    /**
+     * Verifies a one-time password against the codes for the given time step and up to {@code window} time steps
+     * before and after it.
+     *
+     * @see #verify(Key, int, Date, int)
+     */
+    public OptionalInt verify(final Key key, final int password, final long timeStep, final int window) throws InvalidKeyException {
+        if (window < 0) {
+            throw new IllegalArgumentException("Window must not be negative.");
+        }
+
+        final MacCache cache = this.getMacCache();
+        final Mac mac = cache.getMac(key);
+
+        int matched = 0;
+        int matchedOffset = 0;
+
+        // Visit offsets from the current step outward (0, -1, 1, -2, 2, ...) so that the first match is the closest.
+        for (int i = 0; i <= 2 * window; i++) {
+            final int offset = (i & 1) == 0 ? i >>> 1 : -((i + 1) >>> 1);
+            final int difference = this.generateOneTimePassword(cache, mac, timeStep + offset) ^ password;
+
+            // 1 if the codes are equal, 0 otherwise, without branching on the result.
+            final int equal = ((difference | -difference) >>> 31) ^ 1;
+            final int first = equal & ~matched;
+
+            matchedOffset ^= -first & (matchedOffset ^ offset);
+            matched |= equal;
+        }
+
+        return matched == 1 ? OptionalInt.of(matchedOffset) : OptionalInt.empty();
+    }
+
     /**
      * Returns the time step used by this generator.
      *
@@ -0,0 +1,175 @@
+package pers.arjay.generator.otp;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.util.Date;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+
+/**
+ * <p>Caches, per key, the one-time passwords of the current time step and of the {@code window} steps before and after
+ * it, so that repeated verifications within a time step compare against cached integers instead of computing HMACs.
+ * Codes are computed lazily on the first verification of a step; when the time step rolls over, the codes that are
+ * still inside the window are carried over and only the new steps are computed.</p>
+ *
+ * <p>Codes are cached by key ID, so callers must call {@link #invalidate(String)} when the secret key of an ID
+ * changes. The cache holds at most {@code maxKeys} keys; once full, entries of past time steps are purged at most once
+ * per time step, and while it is still full, new keys are verified without caching.</p>
+ *
+ * <p>{@code TotpCodeCache} instances are thread-safe.</p>
+ */
+public class TotpCodeCache {
+    private final TimeBasedOneTimePasswordGenerator generator;
+    private final int window;
+    private final int maxKeys;
+
+    private final ConcurrentMap<String, Codes> codes = new ConcurrentHashMap<>();
+
+    /**
+     * The latest time step for which past entries were purged.
+     */
+    private final AtomicLong purgedTimeStep = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Creates a new cache.
+     *
+     * @param generator the generator used to compute codes
+     * @param window the number of time steps to accept before and after the current time step
+     * @param maxKeys the maximum number of keys for which codes are cached
+     */
+    public TotpCodeCache(final TimeBasedOneTimePasswordGenerator generator, final int window, final int maxKeys) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Window must not be negative.");
+        }
+
+        this.generator = generator;
+        this.window = window;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Verifies a one-time password with the same result as
+     * {@link TimeBasedOneTimePasswordGenerator#verify(Key, int, Date, int)}.
+     *
+     * @param keyId an identifier of the key, such as an account ID
+     * @param key the secret key of the ID, used only when codes need to be computed
+     * @param password the one-time password to verify
+     * @param timestamp the timestamp at which the password was received
+     *
+     * @return the offset, in time steps, of the matched code relative to the timestamp, or an empty value if the
+     * password does not match any step in the window
+     *
+     * @throws InvalidKeyException if the given key is inappropriate for initializing the {@link Mac} of the generator
+     */
+    public OptionalInt verify(final String keyId, final Key key, final int password, final Date timestamp) throws InvalidKeyException {
+        final long timeStep = this.generator.getTimeStep(timestamp);
+        final Codes cached = this.codes.get(keyId);
+
+        if (cached != null && cached.timeStep == timeStep) {
+            return match(cached.codes, this.window, password);
+        }
+
+        final Codes computed = this.compute(key, timeStep, cached);
+
+        // Only replace the entry that was read, so that an invalidate() that ran meanwhile is never undone by codes
+        // carried over from the old key.
+        if (cached != null) {
+            this.codes.replace(keyId, cached, computed);
+        } else if (this.hasRoom(timeStep)) {
+            this.codes.putIfAbsent(keyId, computed);
+        }
+
+        return match(computed.codes, this.window, password);
+    }
+
+    /**
+     * Drops the cached codes of the given key ID; must be called when its secret key changes.
+     */
+    public void invalidate(final String keyId) {
+        this.codes.remove(keyId);
+    }
+
+    /**
+     * Drops all cached codes.
+     */
+    public void clear() {
+        this.codes.clear();
+    }
+
+    /**
+     * Returns the number of keys with cached codes.
+     */
+    public int size() {
+        return this.codes.size();
+    }
+
+    private Codes compute(final Key key, final long timeStep, final Codes previous) throws InvalidKeyException {
+        final int[] codes = new int[2 * this.window + 1];
+        int reused = 0;
+
+        // Codes of steps still inside the window move toward the start of the array when time advances.
+        if (previous != null && previous.timeStep < timeStep && timeStep - previous.timeStep < codes.length) {
+            final int shift = (int) (timeStep - previous.timeStep);
+            reused = codes.length - shift;
+            System.arraycopy(previous.codes, shift, codes, 0, reused);
+        }
+
+        for (int i = reused; i < codes.length; i++) {
+            codes[i] = this.generator.generateOneTimePassword(key, timeStep + i - this.window);
+        }
+
+        return new Codes(timeStep, codes);
+    }
+
+    private boolean hasRoom(final long timeStep) {
+        if (this.codes.size() < this.maxKeys) {
+            return true;
+        }
+
+        // Purge entries of past time steps; they would be recomputed on their next verification anyway. Nothing new
+        // becomes purgeable until the time step rolls over, so only the first full miss of each step scans the map.
+        final long purged = this.purgedTimeStep.get();
+
+        if (timeStep > purged && this.purgedTimeStep.compareAndSet(purged, timeStep)) {
+            this.codes.values().removeIf(codes -> codes.timeStep < timeStep);
+        }
+
+        return this.codes.size() < this.maxKeys;
+    }
+
+    /**
+     * Compares the password with every code in constant time; the offset closest to the current step wins, preferring
+     * the earlier step, as in {@link TimeBasedOneTimePasswordGenerator#verify(Key, int, long, int)}.
+     */
+    private static OptionalInt match(final int[] codes, final int window, final int password) {
+        int matched = 0;
+        int matchedOffset = 0;
+
+        for (int i = 0; i < codes.length; i++) {
+            final int offset = (i & 1) == 0 ? i >>> 1 : -((i + 1) >>> 1);
+            final int difference = codes[offset + window] ^ password;
+
+            final int equal = ((difference | -difference) >>> 31) ^ 1;
+            final int first = equal & ~matched;
+
+            matchedOffset ^= -first & (matchedOffset ^ offset);
+            matched |= equal;
+        }
+
+        return matched == 1 ? OptionalInt.of(matchedOffset) : OptionalInt.empty();
+    }
+
+    private static final class Codes {
+        private final long timeStep;
+        private final int[] codes;
+
+        private Codes(final long timeStep, final int[] codes) {
+            this.timeStep = timeStep;
+            this.codes = codes;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+package pers.arjay.generator.otp;
+
+/**
+ * <p>Remembers which time steps have already been accepted for each key, so that a one-time password cannot be
+ * accepted twice. As required by section 5.2 of <a href="https://tools.ietf.org/html/rfc6238">RFC&nbsp;6238</a>, once a
+ * password has been accepted for a time step, any further password for the same key and time step must be
+ * rejected.</p>
+ *
+ * @see TimeBasedOneTimePasswordGenerator#verify(java.security.Key, String, int, java.util.Date, int, UsedCodeStore)
+ * @see InMemoryUsedCodeStore
+ * @see RedisUsedCodeStore
+ */
+public interface UsedCodeStore {
+
+    /**
+     * Marks the given time step as used for the given key.
+     *
+     * @param keyId an identifier of the secret key, such as an account ID
+     * @param timeStep the time step of the accepted password
+     *
+     * @return {@code true} if the time step had not been used for the key before; {@code false} if it had, or if the
+     * store can no longer tell, in which case the password must be rejected
+     */
+    boolean markUsed(String keyId, long timeStep);
+}
\ No newline at end of file
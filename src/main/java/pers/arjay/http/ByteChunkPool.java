@@ -0,0 +1,37 @@
+package pers.arjay.http;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * <pre>
+ * 固定大小 byte[] 的緩衝池，供請求內容的緩衝重複使用，降低大量請求時的配置與 GC。
+ * 池中最多保留 maxPooled 個，池空時直接配置，池滿時歸還的緩衝交給 GC。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+final class ByteChunkPool {
+
+	static final int CHUNK_SIZE = 8192;
+
+	/**
+	 * 所有 {@link CustomerHttpServletRequestWrapper} 共用，最多保留 4 MB
+	 */
+	static final ByteChunkPool SHARED = new ByteChunkPool(512);
+
+	private final ArrayBlockingQueue<byte[]> free;
+
+	ByteChunkPool(int maxPooled) {
+		this.free = new ArrayBlockingQueue<>(maxPooled);
+	}
+
+	byte[] acquire() {
+		final byte[] chunk = free.poll();
+		return chunk != null ? chunk : new byte[CHUNK_SIZE];
+	}
+
+	void release(byte[] chunk) {
+		free.offer(chunk);
+	}
+
+}
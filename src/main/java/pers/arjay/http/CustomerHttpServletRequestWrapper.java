@@ -1,62 +1,406 @@
 package pers.arjay.http;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 
-import org.springframework.util.StreamUtils;
+/**
+ * <pre>
+ * 可重複讀取請求內容的 HttpServletRequest。
+ *
+ * 第一次讀取時才緩衝，未讀取的請求不花費任何成本。
+ * 不超過 memoryThreshold 的內容放在 {@link ByteChunkPool} 的緩衝中；
+ * 超過時寫入暫存檔，之後以 {@link FileChannel} 依位置讀回，不佔用 heap。
+ * 超過 maxBodySize 時拋出 {@link RequestBodyTooLargeException}。
+ *
+ * 使用完畢須呼叫 {@link #close()} 歸還緩衝並刪除暫存檔，見 {@link pers.arjay.filter.ReplacedFilter}。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public class CustomerHttpServletRequestWrapper extends HttpServletRequestWrapper implements Closeable {
 
-public class CustomerHttpServletRequestWrapper extends HttpServletRequestWrapper {
+	/**
+	 * 預設放在記憶體的內容上限，64 KB
+	 */
+	public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
 
-	private byte[] requestBody = null;
+	/**
+	 * 預設的內容上限，32 MB
+	 */
+	public static final long DEFAULT_MAX_BODY_SIZE = 32L * 1024 * 1024;
+
+	private final ByteChunkPool pool = ByteChunkPool.SHARED;
+
+	private final int memoryThreshold;
+
+	private final long maxBodySize;
+
+	/**
+	 * 內容長度，尚未緩衝時為 -1
+	 */
+	private long length = -1;
+
+	/**
+	 * 放在記憶體的內容，除最後一個之外皆為完整的 {@link ByteChunkPool#CHUNK_SIZE}
+	 */
+	private List<byte[]> chunks;
+
+	private Path spillFile;
+
+	private FileChannel spillChannel;
+
+	private boolean closed;
+
+	private boolean bodyTooLarge;
 
 	public CustomerHttpServletRequestWrapper(HttpServletRequest request) {
+		this(request, DEFAULT_MEMORY_THRESHOLD, DEFAULT_MAX_BODY_SIZE);
+	}
+
+	/**
+	 * @param request
+	 *            原請求
+	 * @param memoryThreshold
+	 *            放在記憶體的內容上限，超過時寫入暫存檔
+	 * @param maxBodySize
+	 *            內容上限
+	 */
+	public CustomerHttpServletRequestWrapper(HttpServletRequest request, int memoryThreshold, long maxBodySize) {
 		super(request);
-		try {
-			requestBody = StreamUtils.copyToByteArray(request.getInputStream());
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		this.memoryThreshold = memoryThreshold;
+		this.maxBodySize = maxBodySize;
 	}
 
 	@Override
 	public ServletInputStream getInputStream() throws IOException {
-		if (requestBody == null) {
-			requestBody = new byte[0];
+		buffer();
+		return spillChannel != null ? new FileBodyInputStream() : new HeapBodyInputStream();
+	}
+
+	@Override
+	public BufferedReader getReader() throws IOException {
+		final String encoding = getCharacterEncoding();
+		final Charset charset = encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+		return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+	}
+
+	/**
+	 * @return 內容是否已寫入暫存檔
+	 */
+	public boolean isSpilled() {
+		return spillChannel != null;
+	}
+
+	/**
+	 * @return 讀取時內容是否超過 maxBodySize，框架將 {@link RequestBodyTooLargeException} 包裝或轉為其他錯誤時仍可判斷
+	 */
+	public boolean isBodyTooLarge() {
+		return bodyTooLarge;
+	}
+
+	/**
+	 * 歸還緩衝並刪除暫存檔，之後無法再讀取內容
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
 		}
-		final ByteArrayInputStream buffer = new ByteArrayInputStream(requestBody);
-		return new ServletInputStream() {
-			@Override
-			public int read() throws IOException {
-				return buffer.read();
+		closed = true;
+		releaseChunks();
+		if (spillChannel != null) {
+			try {
+				spillChannel.close();
+			} finally {
+				Files.deleteIfExists(spillFile);
 			}
+		}
+	}
 
-			@Override
-			public boolean isFinished() {
-				return buffer.available() == 0;
+	/**
+	 * 讀取原請求的內容，超過 memoryThreshold 時改寫入暫存檔
+	 */
+	private void buffer() throws IOException {
+		if (closed) {
+			throw new IOException("request body has been released");
+		}
+		if (length >= 0) {
+			return;
+		}
+		if (getContentLengthLong() > maxBodySize) {
+			bodyTooLarge = true;
+			throw new RequestBodyTooLargeException(maxBodySize);
+		}
+
+		final InputStream in = super.getInputStream();
+		chunks = new ArrayList<>();
+		long total = 0;
+		try {
+			while (true) {
+				final byte[] chunk = pool.acquire();
+				final int read = readFully(in, chunk);
+				total += read;
+				if (total > maxBodySize) {
+					pool.release(chunk);
+					bodyTooLarge = true;
+					throw new RequestBodyTooLargeException(maxBodySize);
+				}
+				if (spillChannel == null && total > memoryThreshold) {
+					spill(total - read);
+				}
+				if (spillChannel != null) {
+					write(chunk, read);
+					pool.release(chunk);
+				} else if (read > 0) {
+					chunks.add(chunk);
+				} else {
+					pool.release(chunk);
+				}
+				if (read < chunk.length) {
+					break;
+				}
 			}
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+		length = total;
+	}
+
+	/**
+	 * 將已緩衝的內容寫入暫存檔，之後的內容直接寫入暫存檔
+	 */
+	private void spill(long buffered) throws IOException {
+		spillFile = Files.createTempFile("request-body-", ".tmp");
+		spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long remaining = buffered;
+		for (byte[] chunk : chunks) {
+			final int size = (int) Math.min(chunk.length, remaining);
+			write(chunk, size);
+			remaining -= size;
+		}
+		releaseChunks();
+	}
 
-			@Override
-			public boolean isReady() {
-				return true;
+	private void write(byte[] chunk, int size) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, size);
+		while (buffer.hasRemaining()) {
+			spillChannel.write(buffer);
+		}
+	}
+
+	private void releaseChunks() {
+		if (chunks != null) {
+			for (byte[] chunk : chunks) {
+				pool.release(chunk);
 			}
+			chunks = null;
+		}
+	}
 
-			@Override
-			public void setReadListener(ReadListener listener) {
-				throw new RuntimeException("Not implemented");
+	/**
+	 * 讀滿 chunk，只有讀到結尾時才會少於 chunk 的長度
+	 */
+	private static int readFully(InputStream in, byte[] chunk) throws IOException {
+		int read = 0;
+		while (read < chunk.length) {
+			final int count = in.read(chunk, read, chunk.length - read);
+			if (count < 0) {
+				break;
 			}
-		};
+			read += count;
+		}
+		return read;
 	}
 
-	@Override
-	public BufferedReader getReader() throws IOException {
-		return new BufferedReader(new InputStreamReader(getInputStream()));
+	/**
+	 * 內容已全部緩衝，讀取不會阻塞
+	 */
+	private abstract class BodyInputStream extends ServletInputStream {
+
+		protected long position;
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("request body has been released");
+			}
+			if (len == 0) {
+				return 0;
+			}
+			if (position >= length) {
+				return -1;
+			}
+			final int count = readAt(b, off, (int) Math.min(len, length - position));
+			position += count;
+			return count;
+		}
+
+		/**
+		 * 由 position 讀取 len 個 byte，len 不超過剩餘的內容
+		 */
+		protected abstract int readAt(byte[] b, int off, int len) throws IOException;
+
+		@Override
+		public long skip(long n) {
+			final long skipped = Math.max(0, Math.min(n, length - position));
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, length - position);
+		}
+
+		@Override
+		public boolean isFinished() {
+			return position >= length;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(ReadListener listener) {
+			try {
+				if (!isFinished()) {
+					listener.onDataAvailable();
+				}
+				if (isFinished()) {
+					listener.onAllDataRead();
+				}
+			} catch (IOException e) {
+				listener.onError(e);
+			}
+		}
+	}
+
+	private final class HeapBodyInputStream extends BodyInputStream {
+
+		@Override
+		public int read() throws IOException {
+			if (closed) {
+				throw new IOException("request body has been released");
+			}
+			if (position >= length) {
+				return -1;
+			}
+			final byte value = chunks.get((int) (position / ByteChunkPool.CHUNK_SIZE))[(int) (position % ByteChunkPool.CHUNK_SIZE)];
+			position++;
+			return value & 0xff;
+		}
+
+		@Override
+		protected int readAt(byte[] b, int off, int len) {
+			int copied = 0;
+			while (copied < len) {
+				final long at = position + copied;
+				final int offset = (int) (at % ByteChunkPool.CHUNK_SIZE);
+				final int size = Math.min(len - copied, ByteChunkPool.CHUNK_SIZE - offset);
+				System.arraycopy(chunks.get((int) (at / ByteChunkPool.CHUNK_SIZE)), offset, b, off + copied, size);
+				copied += size;
+			}
+			return copied;
+		}
+	}
+
+	private final class FileBodyInputStream extends BodyInputStream {
+
+		/**
+		 * 預讀的內容，讀到結尾或關閉時歸還
+		 */
+		private byte[] window;
+
+		private long windowStart;
+
+		private int windowLength;
+
+		@Override
+		public int read() throws IOException {
+			if (closed) {
+				throw new IOException("request body has been released");
+			}
+			if (position >= length) {
+				release();
+				return -1;
+			}
+			if (!inWindow(position)) {
+				fill(position);
+			}
+			return window[(int) (position++ - windowStart)] & 0xff;
+		}
+
+		@Override
+		protected int readAt(byte[] b, int off, int len) throws IOException {
+			if (len >= ByteChunkPool.CHUNK_SIZE && !inWindow(position)) {
+				// 大量讀取直接讀入呼叫端的陣列
+				final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+				readFully(buffer, position);
+				return len;
+			}
+			if (!inWindow(position)) {
+				fill(position);
+			}
+			final int size = (int) Math.min(len, windowStart + windowLength - position);
+			System.arraycopy(window, (int) (position - windowStart), b, off, size);
+			if (position + size >= length) {
+				release();
+			}
+			return size;
+		}
+
+		private boolean inWindow(long at) {
+			return window != null && at >= windowStart && at < windowStart + windowLength;
+		}
+
+		private void fill(long at) throws IOException {
+			if (window == null) {
+				window = pool.acquire();
+			}
+			windowStart = at;
+			windowLength = (int) Math.min(window.length, length - at);
+			readFully(ByteBuffer.wrap(window, 0, windowLength), at);
+		}
+
+		private void readFully(ByteBuffer buffer, long at) throws IOException {
+			final int start = buffer.position();
+			while (buffer.hasRemaining()) {
+				if (spillChannel.read(buffer, at + buffer.position() - start) < 0) {
+					throw new IOException("spilled request body is truncated");
+				}
+			}
+		}
+
+		private void release() {
+			if (window != null) {
+				pool.release(window);
+				window = null;
+			}
+		}
+
+		@Override
+		public void close() {
+			release();
+		}
 	}
 
 }
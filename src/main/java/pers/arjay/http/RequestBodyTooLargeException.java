@@ -0,0 +1,25 @@
+package pers.arjay.http;
+
+import java.io.IOException;
+
+/**
+ * 請求內容超過上限
+ *
+ * @author jay.kuo
+ */
+public class RequestBodyTooLargeException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long maxBodySize;
+
+	public RequestBodyTooLargeException(long maxBodySize) {
+		super("request body exceeds " + maxBodySize + " bytes");
+		this.maxBodySize = maxBodySize;
+	}
+
+	public long getMaxBodySize() {
+		return maxBodySize;
+	}
+
+}
@@ -0,0 +1,168 @@
+package pers.arjay.jwt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * <pre>
+ * 已驗證令牌的數據聲明快取。
+ *
+ * 以令牌的 SHA-256 雜湊為鍵，不保留令牌本身；最多保留 maxSize 筆，超過時一次移除約 1/8 最久未使用的項目。
+ * 項目在令牌的 exp 到期後失效，沒有 exp 的令牌不快取。
+ * 只放入驗證成功的數據聲明，無效令牌不會佔用快取。
+ *
+ * 查詢不需取得鎖，只記錄使用時間；鎖只涵蓋超過上限時的移除，簽章驗證在鎖外進行。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+class ClaimsCache {
+
+	private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+
+	private final ConcurrentMap<ByteBuffer, Cached> entries = new ConcurrentHashMap<>();
+
+	private final int maxSize;
+
+	/**
+	 * @param maxSize
+	 *            最多快取的令牌數
+	 */
+	ClaimsCache(final int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * 令牌的快取鍵
+	 *
+	 * @param token
+	 *            令牌
+	 * @return 令牌的 SHA-256 雜湊
+	 */
+	static ByteBuffer key(String token) {
+		return ByteBuffer.wrap(SHA256.get().digest(token.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * 取得未過期的數據聲明，回傳的物件為共用，請勿修改
+	 *
+	 * @param key
+	 *            {@link #key(String)}
+	 * @param now
+	 *            目前時間 (毫秒)
+	 * @return 數據聲明，不存在或已過期時為 null
+	 */
+	Claims get(ByteBuffer key, long now) {
+		final Cached cached = entries.get(key);
+		if (cached == null) {
+			return null;
+		}
+		if (now >= cached.expiration) {
+			entries.remove(key, cached);
+			return null;
+		}
+		cached.lastAccess = System.nanoTime();
+		return cached.claims;
+	}
+
+	/**
+	 * 放入已驗證的數據聲明
+	 *
+	 * @param key
+	 *            {@link #key(String)}
+	 * @param claims
+	 *            已驗證的數據聲明
+	 */
+	void put(ByteBuffer key, Claims claims) {
+		final Date expiration = claims.getExpiration();
+		if (expiration == null) {
+			return;
+		}
+		entries.put(key, new Cached(claims, expiration.getTime(), System.nanoTime()));
+		if (entries.size() > maxSize) {
+			trim();
+		}
+	}
+
+	/**
+	 * 超過上限時移除最久未使用的項目，一次移除到上限的 7/8，排序的成本分攤到之後的多次放入
+	 */
+	private synchronized void trim() {
+		final int size = entries.size();
+		if (size <= maxSize) {
+			return;
+		}
+		final long[] accesses = new long[size];
+		int count = 0;
+		for (Cached cached : entries.values()) {
+			if (count == size) {
+				break;
+			}
+			accesses[count++] = cached.lastAccess;
+		}
+		Arrays.sort(accesses, 0, count);
+		final int excess = Math.min(count, size - (maxSize - maxSize / 8));
+		if (excess == 0) {
+			// 期間已被清空
+			return;
+		}
+		// 比較時間差，System.nanoTime 可能為負
+		final long oldest = accesses[0];
+		final long threshold = accesses[excess - 1] - oldest;
+		entries.values().removeIf(cached -> cached.lastAccess - oldest <= threshold);
+	}
+
+	/**
+	 * 移除單一令牌
+	 */
+	void remove(ByteBuffer key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * 清空快取
+	 */
+	void clear() {
+		entries.clear();
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	private static final class Cached {
+
+		private final Claims claims;
+
+		private final long expiration;
+
+		/**
+		 * 最後使用的時間 (System.nanoTime)，查詢時不取得鎖直接更新
+		 */
+		private volatile long lastAccess;
+
+		private Cached(Claims claims, long expiration, long lastAccess) {
+			this.claims = claims;
+			this.expiration = expiration;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+}
@@ -0,0 +1,712 @@
+package pers.arjay.jwt;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+
+/**
+ * <pre>
+ * 輕量的 HS512 令牌驗證，供只需 sub、exp 與 created 的前置檢查使用，如依使用者路由請求。
+ *
+ * 直接以 HMAC-SHA512 驗證 header.payload 的原始位元組，並以專用的掃描器從 payload 取出 sub、exp、nbf 與 created，
+ * 不經過 JSON 對應，也不建立 {@link io.jsonwebtoken.Claims} 與 Date；
+ * 每個執行緒重複使用已初始化的 {@link Mac} 與緩衝區，除了結果與 sub 字串之外不配置物件。
+ *
+ * 與 jjwt 的判定一致：簽章不符、格式錯誤、exp 已過或 nbf 未到的令牌皆無效。
+ * 只接受 alg 為 HS512 且未壓縮的令牌，即 {@link JwtTokenUtil} 簽發的令牌，其他演算法或 zip 壓縮的令牌視為無效。
+ * 簽章必須為標準的 Base64URL 編碼；jjwt 也接受 + / 與多餘位元不為 0 的寫法，
+ * 使同一令牌有多種字串，會繞過以令牌雜湊識別的快取與撤銷清單，因此這裡視為無效。
+ *
+ * 成本主要在 HMAC-SHA512 本身，省下的是 JSON 對應與物件配置。
+ *
+ * 實例可由多執行緒共用。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public class FastJwtVerifier {
+
+	/**
+	 * {"alg":"HS512"} 的 Base64URL 編碼，即 jjwt 簽發 HS512 令牌的 header
+	 */
+	private static final String HS512_HEADER = "eyJhbGciOiJIUzUxMiJ9";
+
+	private static final String ALGORITHM = SignatureAlgorithm.HS512.getJcaName();
+
+	private static final int SIGNATURE_LENGTH = 64;
+
+	/**
+	 * 64 bytes 的簽章以不補等號的 Base64URL 編碼後的長度
+	 */
+	private static final int ENCODED_SIGNATURE_LENGTH = 86;
+
+	private static final byte[] BASE64URL = new byte[128];
+
+	static {
+		Arrays.fill(BASE64URL, (byte) -1);
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+		for (int i = 0; i < alphabet.length(); i++) {
+			BASE64URL[alphabet.charAt(i)] = (byte) i;
+		}
+	}
+
+	private final ThreadLocal<Scratch> scratch;
+
+	/**
+	 * @param key
+	 *            HS512 簽章金鑰
+	 * @throws IllegalArgumentException
+	 *             金鑰無法用於 HMAC-SHA512
+	 */
+	public FastJwtVerifier(Key key) {
+		try {
+			// 先初始化一次，金鑰錯誤時在建立時就拋出
+			newMac(key);
+		} catch (InvalidKeyException e) {
+			throw new IllegalArgumentException("key is not usable for " + ALGORITHM, e);
+		}
+		this.scratch = ThreadLocal.withInitial(() -> {
+			try {
+				return new Scratch(newMac(key));
+			} catch (InvalidKeyException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	private static Mac newMac(Key key) throws InvalidKeyException {
+		try {
+			final Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+			return mac;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 驗證令牌並取出 sub、exp 與 created
+	 *
+	 * @param token
+	 *            令牌
+	 * @return 令牌內容，令牌無效或已過期時為 null
+	 */
+	public Payload verify(String token) {
+		return verify(token, System.currentTimeMillis());
+	}
+
+	/**
+	 * 驗證令牌並取出 sub、exp 與 created
+	 *
+	 * @param token
+	 *            令牌
+	 * @param now
+	 *            目前時間 (毫秒)
+	 * @return 令牌內容，令牌無效、exp 已過或 nbf 未到時為 null
+	 */
+	public Payload verify(String token, long now) {
+		if (token == null) {
+			return null;
+		}
+		final int headerEnd = token.indexOf('.');
+		if (headerEnd <= 0) {
+			return null;
+		}
+		final int payloadEnd = token.indexOf('.', headerEnd + 1);
+		if (payloadEnd < 0 || token.length() - payloadEnd - 1 != ENCODED_SIGNATURE_LENGTH) {
+			return null;
+		}
+
+		final Scratch scratch = this.scratch.get();
+
+		// 簽章
+		final byte[] signed = scratch.signed(payloadEnd);
+		for (int i = 0; i < payloadEnd; i++) {
+			final char c = token.charAt(i);
+			if (c >= 0x80) {
+				return null;
+			}
+			signed[i] = (byte) c;
+		}
+		scratch.mac.update(signed, 0, payloadEnd);
+		try {
+			scratch.mac.doFinal(scratch.expected, 0);
+		} catch (ShortBufferException e) {
+			// 緩衝區依 HMAC-SHA512 的長度配置，不會發生
+			throw new IllegalStateException(e);
+		}
+		if (decode(token, payloadEnd + 1, token.length(), scratch.actual) != SIGNATURE_LENGTH
+				|| !MessageDigest.isEqual(scratch.expected, scratch.actual)) {
+			return null;
+		}
+
+		// header
+		if (!token.regionMatches(0, HS512_HEADER, 0, headerEnd) || headerEnd != HS512_HEADER.length()) {
+			final byte[] header = scratch.json(headerEnd);
+			final int length = decode(token, 0, headerEnd, header);
+			if (length < 0 || !isHs512Header(header, length)) {
+				return null;
+			}
+		}
+
+		// payload
+		final byte[] payload = scratch.json(payloadEnd - headerEnd - 1);
+		final int length = decode(token, headerEnd + 1, payloadEnd, payload);
+		if (length < 0) {
+			return null;
+		}
+		final Payload result = new Payload();
+		if (!new Scanner(payload, length).scanObject(result)) {
+			return null;
+		}
+		if (result.expiration != Long.MIN_VALUE && now > result.expiration) {
+			return null;
+		}
+		if (result.notBefore != Long.MIN_VALUE && now < result.notBefore) {
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 * 簽章是否為標準的 Base64URL 編碼，只檢查字元，不計算 HMAC
+	 *
+	 * @param token
+	 *            令牌
+	 * @return 簽章為 86 個 Base64URL 字元，且最後一個字元多餘的 4 個位元為 0
+	 */
+	static boolean hasCanonicalSignature(String token) {
+		final int signatureStart = token.lastIndexOf('.') + 1;
+		if (signatureStart == 0 || token.length() - signatureStart != ENCODED_SIGNATURE_LENGTH) {
+			return false;
+		}
+		for (int i = signatureStart; i < token.length(); i++) {
+			final char c = token.charAt(i);
+			if (c >= 0x80 || BASE64URL[c] < 0) {
+				return false;
+			}
+		}
+		return (BASE64URL[token.charAt(token.length() - 1)] & 0x0f) == 0;
+	}
+
+	private static boolean isHs512Header(byte[] header, int length) {
+		final Scanner scanner = new Scanner(header, length);
+		return scanner.scanObject(null) && "HS512".equals(scanner.algorithm) && !scanner.compressed;
+	}
+
+	/**
+	 * 解碼不補等號的 Base64URL
+	 *
+	 * @return 解碼後的長度，格式錯誤或緩衝區不足時為 -1
+	 */
+	private static int decode(String source, int from, int to, byte[] target) {
+		final int chars = to - from;
+		if (chars % 4 == 1) {
+			return -1;
+		}
+		final int length = chars / 4 * 3 + Math.max(0, chars % 4 - 1);
+		if (length > target.length) {
+			return -1;
+		}
+		int bits = 0;
+		int bitCount = 0;
+		int out = 0;
+		for (int i = from; i < to; i++) {
+			final char c = source.charAt(i);
+			final int value = c < 0x80 ? BASE64URL[c] : -1;
+			if (value < 0) {
+				return -1;
+			}
+			bits = bits << 6 | value;
+			bitCount += 6;
+			if (bitCount >= 8) {
+				bitCount -= 8;
+				target[out++] = (byte) (bits >> bitCount);
+			}
+		}
+		// 多餘的位元必須為 0，與標準解碼器一致
+		if ((bits & ((1 << bitCount) - 1)) != 0) {
+			return -1;
+		}
+		return out;
+	}
+
+	/**
+	 * 令牌內容，時間皆為毫秒，不存在時為 {@link Long#MIN_VALUE}
+	 */
+	public static final class Payload {
+
+		private String subject;
+
+		private long expiration = Long.MIN_VALUE;
+
+		private long notBefore = Long.MIN_VALUE;
+
+		private long created = Long.MIN_VALUE;
+
+		private Payload() {
+		}
+
+		/**
+		 * @return sub，不存在時為 null；非字串的數值與布林值轉為字串，物件與陣列為 null
+		 */
+		public String getSubject() {
+			return subject;
+		}
+
+		/**
+		 * @return exp (毫秒)
+		 */
+		public long getExpiration() {
+			return expiration;
+		}
+
+		/**
+		 * @return created (毫秒)，{@link JwtTokenUtil#generateToken} 放入的簽發時間
+		 */
+		public long getCreated() {
+			return created;
+		}
+	}
+
+	/**
+	 * 每個執行緒重複使用的 {@link Mac} 與緩衝區
+	 */
+	private static final class Scratch {
+
+		private final Mac mac;
+
+		private final byte[] expected = new byte[SIGNATURE_LENGTH];
+
+		private final byte[] actual = new byte[SIGNATURE_LENGTH];
+
+		private byte[] signed = new byte[512];
+
+		private byte[] json = new byte[384];
+
+		private Scratch(Mac mac) {
+			this.mac = mac;
+		}
+
+		private byte[] signed(int length) {
+			if (signed.length < length) {
+				signed = new byte[Math.max(length, signed.length * 2)];
+			}
+			return signed;
+		}
+
+		private byte[] json(int encodedLength) {
+			final int length = encodedLength / 4 * 3 + 2;
+			if (json.length < length) {
+				json = new byte[Math.max(length, json.length * 2)];
+			}
+			return json;
+		}
+	}
+
+	/**
+	 * <pre>
+	 * 只處理頂層物件的 JSON 掃描器，取出需要的欄位，其餘的值只檢查格式後略過。
+	 * 格式錯誤時回傳 false。
+	 * </pre>
+	 */
+	private static final class Scanner {
+
+		private final byte[] json;
+
+		private final int length;
+
+		private int position;
+
+		/**
+		 * header 的 alg
+		 */
+		private String algorithm;
+
+		/**
+		 * header 是否有 zip
+		 */
+		private boolean compressed;
+
+		private Scanner(byte[] json, int length) {
+			this.json = json;
+			this.length = length;
+		}
+
+		/**
+		 * 掃描頂層物件
+		 *
+		 * @param payload
+		 *            掃描 payload 時放入 sub、exp、nbf 與 created；掃描 header 時為 null，記錄 alg 與 zip
+		 */
+		private boolean scanObject(Payload payload) {
+			skipWhitespace();
+			if (!consume('{')) {
+				return false;
+			}
+			skipWhitespace();
+			if (!consume('}')) {
+				do {
+					skipWhitespace();
+					final int nameStart = position;
+					if (!skipString()) {
+						return false;
+					}
+					final int nameEnd = position;
+					skipWhitespace();
+					if (!consume(':')) {
+						return false;
+					}
+					skipWhitespace();
+					if (!scanField(payload, nameStart + 1, nameEnd - 1)) {
+						return false;
+					}
+					skipWhitespace();
+				} while (consume(','));
+				if (!consume('}')) {
+					return false;
+				}
+			}
+			skipWhitespace();
+			return position == length;
+		}
+
+		private boolean scanField(Payload payload, int nameStart, int nameEnd) {
+			if (payload == null) {
+				if (nameIs(nameStart, nameEnd, "alg")) {
+					algorithm = readString();
+					return algorithm != null;
+				}
+				if (nameIs(nameStart, nameEnd, "zip")) {
+					compressed = true;
+				}
+				return skipValue(0);
+			}
+			if (nameIs(nameStart, nameEnd, "sub")) {
+				if (peek() == '"') {
+					payload.subject = readString();
+					return payload.subject != null;
+				}
+				final int valueStart = position;
+				if (!skipValue(0)) {
+					return false;
+				}
+				payload.subject = scalarText(valueStart, position);
+				return true;
+			}
+			if (nameIs(nameStart, nameEnd, "exp")) {
+				payload.expiration = readSeconds();
+				return payload.expiration != Long.MIN_VALUE;
+			}
+			if (nameIs(nameStart, nameEnd, "nbf")) {
+				payload.notBefore = readSeconds();
+				return payload.notBefore != Long.MIN_VALUE;
+			}
+			if (nameIs(nameStart, nameEnd, "created") && isNumberStart(peek())) {
+				payload.created = readLong();
+				return payload.created != Long.MIN_VALUE;
+			}
+			return skipValue(0);
+		}
+
+		private boolean nameIs(int start, int end, String name) {
+			if (end - start != name.length()) {
+				return false;
+			}
+			for (int i = 0; i < name.length(); i++) {
+				if (json[start + i] != name.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * 讀取以秒為單位的時間並轉為毫秒
+		 */
+		private long readSeconds() {
+			final long seconds = readLong();
+			if (seconds == Long.MIN_VALUE || Math.abs(seconds) > Long.MAX_VALUE / 1000) {
+				return Long.MIN_VALUE;
+			}
+			return seconds * 1000;
+		}
+
+		/**
+		 * 讀取整數，格式錯誤或溢位時為 {@link Long#MIN_VALUE}
+		 */
+		private long readLong() {
+			final boolean negative = consume('-');
+			if (position >= length || !isDigit(json[position])) {
+				return Long.MIN_VALUE;
+			}
+			long value = 0;
+			while (position < length && isDigit(json[position])) {
+				final int digit = json[position++] - '0';
+				if (value > (Long.MAX_VALUE - digit) / 10) {
+					return Long.MIN_VALUE;
+				}
+				value = value * 10 + digit;
+			}
+			if (position < length && (json[position] == '.' || json[position] == 'e' || json[position] == 'E')) {
+				return Long.MIN_VALUE;
+			}
+			return negative ? -value : value;
+		}
+
+		/**
+		 * <pre>
+		 * 非字串值轉為字串，與 jjwt 以 String.valueOf 取得 sub 的結果相同：
+		 * 整數依數值 (如 42、-0 為 "0")，含小數或指數的數值依 double (如 1e2 為 "100.0")，布林值為 true 或 false。
+		 * null、物件與陣列為 null。
+		 * </pre>
+		 */
+		private String scalarText(int from, int to) {
+			final byte first = json[from];
+			if (first == 't') {
+				return "true";
+			}
+			if (first == 'f') {
+				return "false";
+			}
+			if (!isNumberStart(first)) {
+				return null;
+			}
+			final String number = new String(json, from, to - from, StandardCharsets.US_ASCII);
+			for (int i = from; i < to; i++) {
+				if (json[i] == '.' || json[i] == 'e' || json[i] == 'E') {
+					return String.valueOf(Double.parseDouble(number));
+				}
+			}
+			return new BigInteger(number).toString();
+		}
+
+		/**
+		 * 讀取字串，格式錯誤時為 null
+		 */
+		private String readString() {
+			final int start = position;
+			if (!skipString()) {
+				return null;
+			}
+			final int end = position - 1;
+			boolean escaped = false;
+			for (int i = start + 1; i < end; i++) {
+				if (json[i] == '\\') {
+					escaped = true;
+					break;
+				}
+			}
+			if (!escaped) {
+				return new String(json, start + 1, end - start - 1, StandardCharsets.UTF_8);
+			}
+			return unescape(start + 1, end);
+		}
+
+		private String unescape(int from, int to) {
+			final StringBuilder value = new StringBuilder(to - from);
+			int segment = from;
+			for (int i = from; i < to; i++) {
+				if (json[i] != '\\') {
+					continue;
+				}
+				value.append(new String(json, segment, i - segment, StandardCharsets.UTF_8));
+				final byte escape = json[++i];
+				switch (escape) {
+				case 'b':
+					value.append('\b');
+					break;
+				case 'f':
+					value.append('\f');
+					break;
+				case 'n':
+					value.append('\n');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'u':
+					value.append((char) Integer.parseInt(new String(json, i + 1, 4, StandardCharsets.US_ASCII), 16));
+					i += 4;
+					break;
+				default:
+					value.append((char) escape);
+				}
+				segment = i + 1;
+			}
+			value.append(new String(json, segment, to - segment, StandardCharsets.UTF_8));
+			return value.toString();
+		}
+
+		/**
+		 * 略過字串，結束時位於右引號之後
+		 */
+		private boolean skipString() {
+			if (!consume('"')) {
+				return false;
+			}
+			while (position < length) {
+				final byte c = json[position++];
+				if (c == '"') {
+					return true;
+				}
+				if ((c & 0xff) < 0x20) {
+					return false;
+				}
+				if (c == '\\') {
+					if (position >= length) {
+						return false;
+					}
+					final byte escape = json[position++];
+					if (escape == 'u') {
+						if (position + 4 > length) {
+							return false;
+						}
+						for (int i = 0; i < 4; i++) {
+							if (Character.digit(json[position++], 16) < 0) {
+								return false;
+							}
+						}
+					} else if ("\"\\/bfnrt".indexOf(escape) < 0) {
+						return false;
+					}
+				}
+			}
+			return false;
+		}
+
+		private boolean skipValue(int depth) {
+			if (depth > 32 || position >= length) {
+				return false;
+			}
+			final byte c = json[position];
+			switch (c) {
+			case '"':
+				return skipString();
+			case '{':
+			case '[':
+				final char close = c == '{' ? '}' : ']';
+				position++;
+				skipWhitespace();
+				if (consume(close)) {
+					return true;
+				}
+				do {
+					skipWhitespace();
+					if (c == '{') {
+						if (!skipString()) {
+							return false;
+						}
+						skipWhitespace();
+						if (!consume(':')) {
+							return false;
+						}
+						skipWhitespace();
+					}
+					if (!skipValue(depth + 1)) {
+						return false;
+					}
+					skipWhitespace();
+				} while (consume(','));
+				return consume(close);
+			case 't':
+				return skipLiteral("true");
+			case 'f':
+				return skipLiteral("false");
+			case 'n':
+				return skipLiteral("null");
+			default:
+				return isNumberStart(c) && skipNumber();
+			}
+		}
+
+		private boolean skipNumber() {
+			consume('-');
+			final int digits = position;
+			while (position < length && isDigit(json[position])) {
+				position++;
+			}
+			if (position == digits) {
+				return false;
+			}
+			if (consume('.')) {
+				final int fraction = position;
+				while (position < length && isDigit(json[position])) {
+					position++;
+				}
+				if (position == fraction) {
+					return false;
+				}
+			}
+			if (consume('e') || consume('E')) {
+				if (!consume('+')) {
+					consume('-');
+				}
+				final int exponent = position;
+				while (position < length && isDigit(json[position])) {
+					position++;
+				}
+				if (position == exponent) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean skipLiteral(String literal) {
+			if (position + literal.length() > length) {
+				return false;
+			}
+			for (int i = 0; i < literal.length(); i++) {
+				if (json[position + i] != literal.charAt(i)) {
+					return false;
+				}
+			}
+			position += literal.length();
+			return true;
+		}
+
+		private void skipWhitespace() {
+			while (position < length) {
+				final byte c = json[position];
+				if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+					return;
+				}
+				position++;
+			}
+		}
+
+		private boolean consume(char expected) {
+			if (position < length && json[position] == expected) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private byte peek() {
+			return position < length ? json[position] : 0;
+		}
+
+		private static boolean isDigit(byte c) {
+			return c >= '0' && c <= '9';
+		}
+
+		private static boolean isNumberStart(byte c) {
+			return c == '-' || isDigit(c);
+		}
+	}
+
+}
@@ -1,17 +1,24 @@
 package pers.arjay.jwt;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.security.Key;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
+import javax.crypto.spec.SecretKeySpec;
+
 import org.springframework.security.core.userdetails.UserDetails;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.TextCodec;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -26,9 +33,116 @@ public class JwtTokenUtil implements Serializable {
 
 	private static final long serialVersionUID = -3384744415959929106L;
 	/**
-	 * 密鑰
+	 * 預設密鑰
+	 */
+	public static final String DEFAULT_SECRET = "jwtTokenSecret";
+
+	/**
+	 * 預設快取的令牌數
+	 */
+	public static final int DEFAULT_CLAIMS_CACHE_SIZE = 1024;
+
+	private final int claimsCacheSize;
+
+	/**
+	 * 目前的簽章金鑰、解析器與快取，輪替時整組替換
 	 */
-	private final String secret = "jwtTokenSecret";
+	private volatile Signing signing;
+
+	/**
+	 * 撤銷清單，未設定時不檢查撤銷；不隨序列化保存
+	 */
+	private transient volatile TokenRevocationList revocationList;
+
+	public JwtTokenUtil() {
+		this(DEFAULT_SECRET);
+	}
+
+	/**
+	 * @param claimsCacheSize
+	 *            最多快取的令牌數
+	 */
+	public JwtTokenUtil(int claimsCacheSize) {
+		this(signingKey(DEFAULT_SECRET), claimsCacheSize);
+	}
+
+	/**
+	 * @param secret
+	 *            Base64 編碼的密鑰，與 jjwt 處理字串密鑰的方式相同
+	 */
+	public JwtTokenUtil(String secret) {
+		this(signingKey(secret), DEFAULT_CLAIMS_CACHE_SIZE);
+	}
+
+	/**
+	 * @param signingKey
+	 *            HS512 簽章金鑰
+	 * @param claimsCacheSize
+	 *            最多快取的令牌數
+	 */
+	public JwtTokenUtil(Key signingKey, int claimsCacheSize) {
+		this.claimsCacheSize = claimsCacheSize;
+		this.signing = new Signing(signingKey, claimsCacheSize);
+	}
+
+	/**
+	 * 由 Base64 編碼的密鑰建立 HS512 簽章金鑰
+	 *
+	 * @param secret
+	 *            Base64 編碼的密鑰
+	 * @return 簽章金鑰
+	 */
+	public static Key signingKey(String secret) {
+		return new SecretKeySpec(TextCodec.BASE64.decode(secret), SignatureAlgorithm.HS512.getJcaName());
+	}
+
+	/**
+	 * 輪替簽章金鑰，之後以新金鑰簽發與驗證，舊金鑰簽發的令牌不再有效
+	 *
+	 * @param signingKey
+	 *            新的 HS512 簽章金鑰
+	 */
+	public void rotateSigningKey(Key signingKey) {
+		this.signing = new Signing(signingKey, claimsCacheSize);
+	}
+
+	/**
+	 * 設定撤銷清單，之後撤銷的令牌驗證失敗
+	 *
+	 * @param revocationList
+	 *            撤銷清單，null 表示不檢查撤銷
+	 */
+	public void setRevocationList(TokenRevocationList revocationList) {
+		this.revocationList = revocationList;
+	}
+
+	/**
+	 * 撤銷令牌，如登出或令牌外洩時
+	 *
+	 * @param token
+	 *            令牌
+	 * @return 是否撤銷，令牌無效或已過期時不需撤銷，回傳 false
+	 */
+	public boolean revokeToken(String token) {
+		final TokenRevocationList revocationList = this.revocationList;
+		if (revocationList == null) {
+			throw new IllegalStateException("revocation list is not set");
+		}
+		final Claims claims = getValidClaims(token);
+		if (claims == null) {
+			return false;
+		}
+		final Date expiration = claims.getExpiration();
+		revocationList.revoke(ClaimsCache.key(token), expiration == null ? Long.MAX_VALUE : expiration.getTime());
+		return true;
+	}
+
+	/**
+	 * 反序列化時重新建立解析器與快取
+	 */
+	private Object readResolve() {
+		return new JwtTokenUtil(signing.key, claimsCacheSize);
+	}
 
 	/**
 	 * 從數據聲明生成令牌
@@ -40,7 +154,7 @@ public class JwtTokenUtil implements Serializable {
 	private String generateToken(Map<String, Object> claims) {
 		/* 30 * 24 * 60 * 60 * 1000 */
 		Date expirationDate = new Date(System.currentTimeMillis() + 2592000L * 1000); // 2592000L * 1000
-		return Jwts.builder().setClaims(claims).setExpiration(expirationDate).signWith(SignatureAlgorithm.HS512, secret)
+		return Jwts.builder().setClaims(claims).setExpiration(expirationDate).signWith(SignatureAlgorithm.HS512, signing.key)
 				.compact();
 	}
 
@@ -52,9 +166,13 @@ public class JwtTokenUtil implements Serializable {
 	 * @return 數據聲明
 	 */
 	private Claims getClaimsFromToken(String token) {
+		return getClaimsFromToken(signing, token);
+	}
+
+	private Claims getClaimsFromToken(Signing signing, String token) {
 		Claims claims;
 		try {
-			claims = Jwts.parser().setSigningKey(secret).parseClaimsJws(token).getBody();
+			claims = signing.parser.parseClaimsJws(token).getBody();
 		} catch (Exception e) {
 			log.info("getClaimsFromToken error ", e);
 			claims = null;
@@ -62,6 +180,52 @@ public class JwtTokenUtil implements Serializable {
 		return claims;
 	}
 
+	/**
+	 * 取得已驗證且未過期的數據聲明，令牌只解析一次，之後在 exp 之前直接由快取取得
+	 *
+	 * @param token
+	 *            令牌
+	 * @return 數據聲明，令牌無效、已過期或已撤銷時為 null；回傳的物件為共用的唯讀檢視，修改時拋出 UnsupportedOperationException
+	 */
+	public Claims getValidClaims(String token) {
+		if (token == null) {
+			return null;
+		}
+		final Signing signing = this.signing;
+		final ByteBuffer key = ClaimsCache.key(token);
+		final TokenRevocationList revocationList = this.revocationList;
+		if (revocationList != null && revocationList.isRevoked(key)) {
+			return null;
+		}
+		Claims claims = signing.claims.get(key, System.currentTimeMillis());
+		// 排除簽章非標準編碼的令牌，同一令牌只有一種字串，撤銷清單與快取才能以雜湊識別；只檢查字元，HMAC 只在 jjwt 計算一次
+		if (claims == null && FastJwtVerifier.hasCanonicalSignature(token)) {
+			claims = getClaimsFromToken(signing, token);
+			if (claims != null) {
+				// 快取中的物件會交給所有呼叫端，只保存唯讀檢視
+				claims = Jwts.claims(Collections.unmodifiableMap(claims));
+				signing.claims.put(key, claims);
+			}
+		}
+		return claims;
+	}
+
+	/**
+	 * 以 {@link FastJwtVerifier} 驗證令牌並取得 sub、exp 與 created，不建立 {@link Claims}，適合只需路由資訊的前置檢查
+	 *
+	 * @param token
+	 *            令牌
+	 * @return 令牌內容，令牌無效、已過期或已撤銷時為 null
+	 */
+	public FastJwtVerifier.Payload getVerifiedPayload(String token) {
+		final FastJwtVerifier.Payload payload = signing.verifier.verify(token);
+		final TokenRevocationList revocationList = this.revocationList;
+		if (payload != null && revocationList != null && revocationList.isRevoked(token)) {
+			return null;
+		}
+		return payload;
+	}
+
 	/**
 	 * 生成令牌
 	 *
@@ -86,7 +250,7 @@ public class JwtTokenUtil implements Serializable {
 	public String getUsernameFromToken(String token) {
 		String username;
 		try {
-			Claims claims = getClaimsFromToken(token);
+			Claims claims = getValidClaims(token);
 			username = claims.getSubject();
 		} catch (Exception e) {
 			log.error("getUsernameFromToken error:", e);
@@ -104,7 +268,7 @@ public class JwtTokenUtil implements Serializable {
 	 */
 	public Boolean isTokenExpired(String token) {
 		try {
-			Claims claims = getClaimsFromToken(token);
+			Claims claims = getValidClaims(token);
 			Date expiration = claims.getExpiration();
 			return expiration.before(new Date());
 		} catch (Exception e) {
@@ -122,7 +286,7 @@ public class JwtTokenUtil implements Serializable {
 	public String refreshToken(String token) {
 		String refreshedToken;
 		try {
-			Claims claims = getClaimsFromToken(token);
+			Map<String, Object> claims = new HashMap<>(getValidClaims(token));
 			claims.put("created", new Date());
 			refreshedToken = generateToken(claims);
 		} catch (Exception e) {
@@ -141,12 +305,44 @@ public class JwtTokenUtil implements Serializable {
 	 * @return 是否有效
 	 */
 	public Boolean validateToken(String token, UserDetails userDetails) {
-		String username = getUsernameFromToken(token);
-		return (Objects.equals(username, userDetails.getUsername()) && !isTokenExpired(token));
+		Claims claims = getValidClaims(token);
+		if (claims == null) {
+			return false;
+		}
+		// 未設定 exp 的令牌不會過期，與 isTokenExpired 相同
+		final Date expiration = claims.getExpiration();
+		return Objects.equals(claims.getSubject(), userDetails.getUsername())
+				&& (expiration == null || expiration.after(new Date()));
 	}
 
 	public Boolean canTokenBeRefreshed(String token, LocalDateTime modifyDate) {
 		return true;
 	}
+
+	/**
+	 * <pre>
+	 * 簽章金鑰與以其建立的解析器及輕量驗證，解析器設定完成後只讀取，可跨執行緒共用。
+	 * 快取只存放以此金鑰驗證的數據聲明，輪替時隨之捨棄。
+	 * </pre>
+	 */
+	private static final class Signing implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Key key;
+
+		private final transient JwtParser parser;
+
+		private final transient ClaimsCache claims;
+
+		private final transient FastJwtVerifier verifier;
+
+		private Signing(Key key, int claimsCacheSize) {
+			this.key = Objects.requireNonNull(key, "key");
+			this.parser = Jwts.parser().setSigningKey(key);
+			this.verifier = new FastJwtVerifier(key);
+			this.claims = new ClaimsCache(claimsCacheSize);
+		}
+	}
 	
 }
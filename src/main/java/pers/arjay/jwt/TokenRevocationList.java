@@ -0,0 +1,302 @@
+package pers.arjay.jwt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <pre>
+ * 令牌撤銷清單。
+ *
+ * 前端為 Bloom filter，絕大多數未撤銷的令牌只需檢查幾個位元即可確定未撤銷；
+ * Bloom filter 判定可能撤銷時，再以精確的集合確認，因此不會誤判。
+ *
+ * 令牌以 SHA-256 雜湊識別，並記錄 exp，過期的令牌本身已無效，{@link #purgeExpired()} 將其移除並重建 Bloom filter。
+ * 撤銷後清單超過 expectedInsertions (或上次移除後剩餘數量的兩倍) 時自動移除，不需另外排程；
+ * 清單較小時過期的令牌會保留到下次移除，可定期呼叫 {@link #purgeExpired()} 提早釋放。
+ * 可用 {@link #save(Path)} 存成快照檔，啟動時以 {@link #load(Path, int, double)} 重建。
+ *
+ * 所有方法皆可由多執行緒同時呼叫，查詢不需取得鎖。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public class TokenRevocationList {
+
+	/**
+	 * 快照檔開頭的識別碼與版本
+	 */
+	private static final int SNAPSHOT_MAGIC = 0x4A575452;
+
+	private static final int DIGEST_LENGTH = 32;
+
+	private final int expectedInsertions;
+
+	private final double falsePositiveProbability;
+
+	/**
+	 * 撤銷的令牌雜湊與其 exp (毫秒)
+	 */
+	private final ConcurrentMap<ByteBuffer, Long> revoked = new ConcurrentHashMap<>();
+
+	private volatile BloomFilter filter;
+
+	/**
+	 * 重建 Bloom filter 期間，新的 Bloom filter 可能尚未包含所有令牌，查詢直接使用精確集合
+	 */
+	private volatile boolean rebuilding;
+
+	/**
+	 * 清單超過此數量時，撤銷的執行緒移除過期的令牌；移除期間為 {@link Integer#MAX_VALUE}，其他執行緒不重複移除
+	 */
+	private final AtomicInteger purgeThreshold;
+
+	/**
+	 * @param expectedInsertions
+	 *            預期同時存在的撤銷令牌數
+	 * @param falsePositiveProbability
+	 *            Bloom filter 的誤判率，如 0.01
+	 */
+	public TokenRevocationList(int expectedInsertions, double falsePositiveProbability) {
+		if (expectedInsertions <= 0) {
+			throw new IllegalArgumentException("expectedInsertions must be positive");
+		}
+		if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1)) {
+			throw new IllegalArgumentException("falsePositiveProbability must be between 0 and 1");
+		}
+		this.expectedInsertions = expectedInsertions;
+		this.falsePositiveProbability = falsePositiveProbability;
+		this.filter = new BloomFilter(expectedInsertions, falsePositiveProbability);
+		this.purgeThreshold = new AtomicInteger(expectedInsertions);
+	}
+
+	/**
+	 * 撤銷令牌
+	 *
+	 * @param token
+	 *            令牌
+	 * @param expiration
+	 *            令牌的 exp (毫秒)，之後可自清單移除
+	 */
+	public void revoke(String token, long expiration) {
+		revoke(ClaimsCache.key(token), expiration);
+	}
+
+	void revoke(ByteBuffer key, long expiration) {
+		revoked.merge(key, expiration, Math::max);
+		// 先放入集合再設定位元，重建期間的撤銷一定會出現在新的 Bloom filter 中
+		filter.put(key);
+
+		final int threshold = purgeThreshold.get();
+		if (revoked.size() > threshold && purgeThreshold.compareAndSet(threshold, Integer.MAX_VALUE)) {
+			purgeExpired(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * 令牌是否已撤銷
+	 *
+	 * @param token
+	 *            令牌
+	 * @return 是否已撤銷
+	 */
+	public boolean isRevoked(String token) {
+		return isRevoked(ClaimsCache.key(token));
+	}
+
+	boolean isRevoked(ByteBuffer key) {
+		if (!rebuilding && !filter.mightContain(key)) {
+			return false;
+		}
+		return revoked.containsKey(key);
+	}
+
+	/**
+	 * @return 清單中的令牌數
+	 */
+	public int size() {
+		return revoked.size();
+	}
+
+	/**
+	 * 移除 exp 已過的令牌，有移除時重建 Bloom filter；清單超過上限時 {@link #revoke(String, long)} 也會呼叫
+	 *
+	 * @return 移除的令牌數
+	 */
+	public int purgeExpired() {
+		return purgeExpired(System.currentTimeMillis());
+	}
+
+	synchronized int purgeExpired(long now) {
+		final int before = revoked.size();
+		revoked.values().removeIf(expiration -> expiration <= now);
+		final int removed = before - revoked.size();
+		if (removed > 0) {
+			rebuild();
+		}
+		// 下次在清單成長一倍後才移除，移除的成本分攤到之間的撤銷
+		purgeThreshold.set((int) Math.max(expectedInsertions, Math.min(Integer.MAX_VALUE - 1, revoked.size() * 2L)));
+		return removed;
+	}
+
+	/**
+	 * 依精確集合重建 Bloom filter，容量不足時一併擴大
+	 */
+	private void rebuild() {
+		rebuilding = true;
+		try {
+			final BloomFilter rebuilt = new BloomFilter(Math.max(expectedInsertions, revoked.size() * 2),
+					falsePositiveProbability);
+			for (ByteBuffer key : revoked.keySet()) {
+				rebuilt.put(key);
+			}
+			filter = rebuilt;
+			// 補上建立期間撤銷、但只設定在舊 Bloom filter 的令牌
+			for (ByteBuffer key : revoked.keySet()) {
+				rebuilt.put(key);
+			}
+		} finally {
+			rebuilding = false;
+		}
+	}
+
+	/**
+	 * 將未過期的令牌存成快照檔，先寫入暫存檔再取代，寫入失敗不會破壞原有的快照
+	 *
+	 * @param snapshot
+	 *            快照檔
+	 * @throws IOException
+	 *             寫入失敗
+	 */
+	public void save(Path snapshot) throws IOException {
+		final Path parent = snapshot.toAbsolutePath().getParent();
+		final Path temp = Files.createTempFile(parent, snapshot.getFileName().toString(), ".tmp");
+		try {
+			final long now = System.currentTimeMillis();
+			try (OutputStream file = Files.newOutputStream(temp);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+				out.writeInt(SNAPSHOT_MAGIC);
+				for (Map.Entry<ByteBuffer, Long> entry : revoked.entrySet()) {
+					if (entry.getValue() > now) {
+						out.write(entry.getKey().array());
+						out.writeLong(entry.getValue());
+					}
+				}
+			}
+			Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * 由快照檔建立撤銷清單，已過期的令牌不載入；快照檔不存在時回傳空的清單
+	 *
+	 * @param snapshot
+	 *            {@link #save(Path)} 寫入的快照檔
+	 * @param expectedInsertions
+	 *            預期同時存在的撤銷令牌數
+	 * @param falsePositiveProbability
+	 *            Bloom filter 的誤判率
+	 * @return 撤銷清單
+	 * @throws IOException
+	 *             讀取失敗或檔案格式不符
+	 */
+	public static TokenRevocationList load(Path snapshot, int expectedInsertions, double falsePositiveProbability)
+			throws IOException {
+		final TokenRevocationList list = new TokenRevocationList(expectedInsertions, falsePositiveProbability);
+		if (Files.notExists(snapshot)) {
+			return list;
+		}
+		final long now = System.currentTimeMillis();
+		try (InputStream file = Files.newInputStream(snapshot);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+			if (in.readInt() != SNAPSHOT_MAGIC) {
+				throw new IOException("not a token revocation snapshot: " + snapshot);
+			}
+			final byte[] digest = new byte[DIGEST_LENGTH];
+			while (true) {
+				final int first = in.read();
+				if (first < 0) {
+					break;
+				}
+				digest[0] = (byte) first;
+				try {
+					in.readFully(digest, 1, DIGEST_LENGTH - 1);
+					final long expiration = in.readLong();
+					if (expiration > now) {
+						list.revoke(ByteBuffer.wrap(digest.clone()), expiration);
+					}
+				} catch (EOFException e) {
+					throw new IOException("truncated token revocation snapshot: " + snapshot, e);
+				}
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * <pre>
+	 * 以 AtomicLongArray 存放位元的 Bloom filter，設定位元不需取得鎖。
+	 * 鍵已是 SHA-256 雜湊，直接取其前 16 bytes 作為 double hashing 的兩個雜湊值。
+	 * </pre>
+	 */
+	private static final class BloomFilter {
+
+		private final AtomicLongArray bits;
+
+		private final long bitSize;
+
+		private final int hashFunctions;
+
+		private BloomFilter(int expectedInsertions, double falsePositiveProbability) {
+			final double ln2 = Math.log(2);
+			final long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (ln2 * ln2));
+			final int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) >>> 6));
+			this.bits = new AtomicLongArray(words);
+			this.bitSize = (long) words << 6;
+			this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * ln2));
+		}
+
+		private void put(ByteBuffer key) {
+			final long hash1 = key.getLong(0);
+			final long hash2 = key.getLong(8);
+			for (int i = 0; i < hashFunctions; i++) {
+				final long index = Long.remainderUnsigned(hash1 + i * hash2, bitSize);
+				final int word = (int) (index >>> 6);
+				final long mask = 1L << index;
+				long current;
+				while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+					// 其他執行緒同時修改同一個 word，重試
+				}
+			}
+		}
+
+		private boolean mightContain(ByteBuffer key) {
+			final long hash1 = key.getLong(0);
+			final long hash2 = key.getLong(8);
+			for (int i = 0; i < hashFunctions; i++) {
+				final long index = Long.remainderUnsigned(hash1 + i * hash2, bitSize);
+				if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+}
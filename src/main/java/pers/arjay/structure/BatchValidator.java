@@ -0,0 +1,128 @@
+package pers.arjay.structure;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+import org.springframework.util.Assert;
+
+import pers.arjay.model.Slip;
+
+/**
+ * <pre>
+ * 批次驗證投注單，以 fork-join 將投注單分段，於多個核心上套用同一個 {@link ValidatePlan}。
+ *
+ * 不論成功或失敗，每張投注單都會有一筆 {@link ValidateResult}，並依傳入順序回傳。
+ *
+ * 範例：
+ *
+ * List&lt;ValidateResult&gt; results = new BatchValidator().validate(plan, slips);
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public class BatchValidator {
+
+	/** 每個子任務至少處理的投注單數 */
+	public static final int DEFAULT_THRESHOLD = 64;
+
+	private final ForkJoinPool pool;
+
+	private final int threshold;
+
+	/**
+	 * 使用 {@link ForkJoinPool#commonPool()}
+	 */
+	public BatchValidator() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public BatchValidator(ForkJoinPool pool) {
+		this(pool, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param pool
+	 *            執行驗證的pool
+	 * @param threshold
+	 *            每個子任務至少處理的投注單數
+	 */
+	public BatchValidator(ForkJoinPool pool, int threshold) {
+		Assert.notNull(pool, "pool must not be null!");
+		Assert.isTrue(threshold > 0, "threshold must be positive!");
+
+		this.pool = pool;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @param plan
+	 *            驗證計畫
+	 * @param slips
+	 *            投注單
+	 * @return 依傳入順序的驗證結果
+	 */
+	public List<ValidateResult> validate(ValidatePlan plan, List<? extends Slip> slips) {
+		return this.validate(plan, slips.toArray(new Slip[0]));
+	}
+
+	/**
+	 * @param plan
+	 *            驗證計畫
+	 * @param slips
+	 *            投注單，會先收集後再分段驗證
+	 * @return 依傳入順序的驗證結果
+	 */
+	public List<ValidateResult> validate(ValidatePlan plan, Stream<? extends Slip> slips) {
+		return this.validate(plan, slips.toArray(Slip[]::new));
+	}
+
+	private List<ValidateResult> validate(ValidatePlan plan, Slip[] slips) {
+		final ValidateResult[] results = new ValidateResult[slips.length];
+		if (slips.length > 0) {
+			pool.invoke(new ValidateTask(plan, slips, results, 0, slips.length));
+		}
+		return Arrays.asList(results);
+	}
+
+	private class ValidateTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -6403176591578423452L;
+
+		private final ValidatePlan plan;
+
+		private final Slip[] slips;
+
+		private final ValidateResult[] results;
+
+		private final int from;
+
+		private final int to;
+
+		private ValidateTask(ValidatePlan plan, Slip[] slips, ValidateResult[] results, int from, int to) {
+			this.plan = plan;
+			this.slips = slips;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= threshold) {
+				for (int i = from; i < to; i++) {
+					results[i] = plan.check(i, slips[i]);
+				}
+				return;
+			}
+
+			final int middle = (from + to) >>> 1;
+			invokeAll(new ValidateTask(plan, slips, results, from, middle),
+					new ValidateTask(plan, slips, results, middle, to));
+		}
+
+	}
+
+}
@@ -0,0 +1,100 @@
+package pers.arjay.structure;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <pre>
+ * 投注內容的合法值集合，不可變且thread-safe。
+ *
+ * 彩種的號碼範圍都很小 (0～9、01～80)，長度4以內的純數字值以 {@link BetTokens#digitKey(int)}
+ * 為索引存放於 long[] bitset，判斷時直接由字元計算代碼，不需產生子字串或裝箱；
+ * 含其他字元的集合則使用一般的 {@link Set}。
+ *
+ * 範例：
+ *
+ * private static final BetDomain digits = BetDomain.of("0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public final class BetDomain {
+
+	/** 以bitset存放時的值，null時使用 values */
+	private final long[] bits;
+
+	private final Set<String> values;
+
+	private BetDomain(long[] bits, Set<String> values) {
+		this.bits = bits;
+		this.values = values;
+	}
+
+	public static BetDomain of(String... values) {
+		return of(Arrays.asList(values));
+	}
+
+	public static BetDomain of(Collection<String> values) {
+		int maxKey = 0;
+		for (String value : values) {
+			final int key = BetTokens.digitKey(value, 0, value.length());
+			if (key < 0 || key >= BetTokens.MAX_SEEN_KEY) {
+				return new BetDomain(null, Collections.unmodifiableSet(new HashSet<>(values)));
+			}
+			maxKey = Math.max(maxKey, key);
+		}
+
+		final long[] bits = new long[(maxKey >>> 6) + 1];
+		for (String value : values) {
+			final int key = BetTokens.digitKey(value, 0, value.length());
+			bits[key >>> 6] |= 1L << key;
+		}
+		return new BetDomain(bits, null);
+	}
+
+	/**
+	 * 以位數補零的連續號碼，如 range(1, 80, 2) 為 "01"～"80"
+	 *
+	 * @param min
+	 *            最小值
+	 * @param max
+	 *            最大值
+	 * @param width
+	 *            位數，不足補零
+	 */
+	public static BetDomain range(int min, int max, int width) {
+		final Set<String> values = new HashSet<>();
+		for (int i = min; i <= max; i++) {
+			values.add(String.format("%0" + width + "d", i));
+		}
+		return of(values);
+	}
+
+	/**
+	 * @param tokens
+	 *            切割結果
+	 * @param index
+	 *            項目位置
+	 */
+	public boolean contains(BetTokens tokens, int index) {
+		if (bits == null) {
+			return values.contains(tokens.toString(index));
+		}
+		return this.containsKey(tokens.digitKey(index));
+	}
+
+	public boolean contains(String value) {
+		if (bits == null) {
+			return values.contains(value);
+		}
+		return this.containsKey(BetTokens.digitKey(value, 0, value.length()));
+	}
+
+	private boolean containsKey(int key) {
+		return key >= 0 && (key >>> 6) < bits.length && (bits[key >>> 6] & (1L << key)) != 0;
+	}
+
+}
@@ -0,0 +1,299 @@
+package pers.arjay.structure;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <pre>
+ * 不建立 {@link BetTree} 的投注展開，各位置各取一個細項，逐注產生而不一次放入集合。
+ *
+ * 預設細項不得重複 (同 {@link BetTree#addNode(Integer, String)})，注數同 {@link PermutationCounter}。
+ *
+ * 範例：
+ *
+ * BetExpansion expansion = BetExpansion.of(new String[][] { { "1", "2" }, { "1", "2", "3" } });
+ *
+ * expansion.stream(Separators.comma) 依序為 "1,2"、"1,3"、"2,1"、"2,3"
+ *
+ * expansion.tuples() 為各位置細項的索引，如 {0, 1} 代表 "1,2"
+ *
+ * 平行處理時以第一個位置的細項分割：
+ *
+ * expansion.stream(Separators.comma).parallel().forEach(settlement::settle);
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public final class BetExpansion {
+
+	private final String[][] positions;
+
+	/** 細項代碼，相同細項有相同代碼 */
+	private final int[][] values;
+
+	private final int valueCount;
+
+	private final boolean repeatable;
+
+	private BetExpansion(String[][] positions, boolean repeatable) {
+		this.positions = positions;
+		this.repeatable = repeatable;
+		this.values = new int[positions.length][];
+
+		final Map<String, Integer> ids = new HashMap<>();
+		for (int i = 0; i < positions.length; i++) {
+			values[i] = new int[positions[i].length];
+			for (int j = 0; j < positions[i].length; j++) {
+				Integer id = ids.get(positions[i][j]);
+				if (id == null) {
+					id = ids.size();
+					ids.put(positions[i][j], id);
+				}
+				values[i][j] = id;
+			}
+		}
+		this.valueCount = ids.size();
+	}
+
+	/**
+	 * @param positions
+	 *            各位置的細項
+	 */
+	public static BetExpansion of(String[][] positions) {
+		return new BetExpansion(positions, false);
+	}
+
+	/**
+	 * @param positions
+	 *            各位置的細項
+	 * @param repeatable
+	 *            不同位置是否可選相同細項
+	 */
+	public static BetExpansion of(String[][] positions, boolean repeatable) {
+		return new BetExpansion(positions, repeatable);
+	}
+
+	public int getPositions() {
+		return positions.length;
+	}
+
+	/** 第 position 個位置第 index 個細項 */
+	public String getItem(int position, int index) {
+		return positions[position][index];
+	}
+
+	/**
+	 * 逐注產生各位置細項的索引。
+	 *
+	 * <B>注意，為避免每注產生物件，回傳的陣列會重複使用，需保留時請自行複製。</B>
+	 */
+	public Iterator<int[]> tuples() {
+		return new TupleSpliterator(0, this.topLength());
+	}
+
+	/**
+	 * 同 {@link #tuples()}，可依第一個位置的細項分割給平行處理，每個分割各自使用自己的陣列
+	 */
+	public Spliterator<int[]> spliterator() {
+		return new TupleSpliterator(0, this.topLength());
+	}
+
+	/**
+	 * 逐注產生以 separator 串接的投注內容
+	 */
+	public Iterator<String> iterator(String separator) {
+		final Iterator<int[]> tuples = this.tuples();
+		return new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return tuples.hasNext();
+			}
+
+			@Override
+			public String next() {
+				return join(tuples.next(), separator);
+			}
+		};
+	}
+
+	/**
+	 * 以 separator 串接的投注內容，可使用 parallel()
+	 */
+	public Stream<String> stream(String separator) {
+		return StreamSupport.stream(this.spliterator(), false).map(tuple -> this.join(tuple, separator));
+	}
+
+	/**
+	 * 以索引表示的投注內容，可使用 parallel()，同 {@link #tuples()} 陣列會重複使用
+	 */
+	public Stream<int[]> tupleStream() {
+		return StreamSupport.stream(this.spliterator(), false);
+	}
+
+	public String join(int[] tuple, String separator) {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < tuple.length; i++) {
+			if (i > 0) {
+				builder.append(separator);
+			}
+			builder.append(positions[i][tuple[i]]);
+		}
+		return builder.toString();
+	}
+
+	private int topLength() {
+		for (String[] position : positions) {
+			if (position.length == 0) {
+				return 0;
+			}
+		}
+		return positions.length == 0 ? 0 : positions[0].length;
+	}
+
+	/**
+	 * 以回溯法逐注產生，只處理第一個位置 [from, to) 區間的細項
+	 */
+	private final class TupleSpliterator implements Spliterator<int[]>, Iterator<int[]> {
+
+		private int from;
+
+		private final int to;
+
+		private final int[] tuple;
+
+		/** 各細項代碼目前被使用的次數 */
+		private final int[] used;
+
+		private boolean started;
+
+		private boolean ready;
+
+		private boolean finished;
+
+		private TupleSpliterator(int from, int to) {
+			this.from = from;
+			this.to = to;
+			this.tuple = new int[positions.length];
+			this.used = new int[valueCount];
+			this.finished = from >= to;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (!ready && !finished) {
+				ready = this.advance();
+				finished = !ready;
+			}
+			return ready;
+		}
+
+		@Override
+		public int[] next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ready = false;
+			return tuple;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super int[]> action) {
+			if (!this.hasNext()) {
+				return false;
+			}
+			action.accept(this.next());
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super int[]> action) {
+			while (this.tryAdvance(action)) {
+			}
+		}
+
+		@Override
+		public Spliterator<int[]> trySplit() {
+			if (started || to - from < 2) {
+				return null;
+			}
+			final int middle = (from + to) >>> 1;
+			final TupleSpliterator prefix = new TupleSpliterator(from, middle);
+			this.from = middle;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			if (finished) {
+				return 0;
+			}
+			long size = to - from;
+			for (int i = 1; i < positions.length; i++) {
+				size *= positions[i].length;
+				if (size < 0) {
+					return Long.MAX_VALUE;
+				}
+			}
+			return size;
+		}
+
+		@Override
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+		}
+
+		/**
+		 * 移至下一注
+		 */
+		private boolean advance() {
+			final int last = positions.length - 1;
+			int depth;
+
+			if (!started) {
+				started = true;
+				depth = 0;
+				tuple[0] = from;
+			} else {
+				depth = last;
+				this.release(depth);
+				tuple[depth]++;
+			}
+
+			while (true) {
+				if (tuple[depth] >= (depth == 0 ? to : positions[depth].length)) {
+					if (depth == 0) {
+						return false;
+					}
+					depth--;
+					this.release(depth);
+					tuple[depth]++;
+					continue;
+				}
+
+				final int value = values[depth][tuple[depth]];
+				if (!repeatable && used[value] > 0) {
+					tuple[depth]++;
+					continue;
+				}
+
+				used[value]++;
+				if (depth == last) {
+					return true;
+				}
+				tuple[++depth] = 0;
+			}
+		}
+
+		private void release(int depth) {
+			used[values[depth][tuple[depth]]]--;
+		}
+
+	}
+
+}
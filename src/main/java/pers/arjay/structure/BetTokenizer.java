@@ -0,0 +1,191 @@
+package pers.arjay.structure;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import pers.arjay.Separators;
+
+/**
+ * <pre>
+ * 以字元掃描取代 String.split(regex) 的投注項切割器，切割結果與 String.split(regex) 相同
+ * (含移除結尾空白項目)，但只記錄起訖位置於 {@link BetTokens}，不產生子字串。
+ *
+ * 常用分隔符號有快速路徑：
+ *
+ * {@link Separators#unsign} 及空字串：每個字元為一項
+ * {@link Separators#multiple}：非數字、字母、底線的字元
+ * 單一字元如 {@link Separators#comma}、{@link Separators#space}、"\\|"
+ *
+ * 其餘regex則使用預先編譯的 {@link Pattern}。
+ *
+ * 範例：
+ *
+ * BetTokenizer tokenizer = BetTokenizer.of(Separators.comma);
+ * BetTokens tokens = new BetTokens();
+ *
+ * tokenizer.tokenize("01,02,03", tokens);
+ *
+ * tokens.size() 為 3，tokens.start(1) 為 3，tokens.end(1) 為 5
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public final class BetTokenizer {
+
+	private static final ThreadLocal<BetTokens> scratch = ThreadLocal.withInitial(BetTokens::new);
+
+	private static final String regexMetaChars = ".$|()[{^?*+\\";
+
+	private enum Mode {
+		EVERY_CHAR, SINGLE_CHAR, NON_WORD, REGEX
+	}
+
+	private final String separator;
+
+	private final Mode mode;
+
+	private final char separatorChar;
+
+	private final Pattern pattern;
+
+	private BetTokenizer(String separator) {
+		this.separator = separator;
+
+		if (separator.isEmpty() || Separators.unsign.equals(separator)) {
+			this.mode = Mode.EVERY_CHAR;
+			this.separatorChar = 0;
+			this.pattern = null;
+		} else if (Separators.multiple.equals(separator)) {
+			this.mode = Mode.NON_WORD;
+			this.separatorChar = 0;
+			this.pattern = null;
+		} else if (separator.length() == 1 && regexMetaChars.indexOf(separator.charAt(0)) < 0) {
+			this.mode = Mode.SINGLE_CHAR;
+			this.separatorChar = separator.charAt(0);
+			this.pattern = null;
+		} else if (separator.length() == 2 && separator.charAt(0) == '\\'
+				&& !Character.isLetterOrDigit(separator.charAt(1)) && separator.charAt(1) < Character.MIN_HIGH_SURROGATE) {
+			this.mode = Mode.SINGLE_CHAR;
+			this.separatorChar = separator.charAt(1);
+			this.pattern = null;
+		} else {
+			this.mode = Mode.REGEX;
+			this.separatorChar = 0;
+			this.pattern = Pattern.compile(separator);
+		}
+	}
+
+	/**
+	 * @param separator
+	 *            split的regex參數
+	 */
+	public static BetTokenizer of(String separator) {
+		return new BetTokenizer(separator);
+	}
+
+	public String getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * 切割整個字串，結果寫入 tokens (會先清空)
+	 *
+	 * @return 切割後的項目數
+	 */
+	public int tokenize(CharSequence source, BetTokens tokens) {
+		return this.tokenize(source, 0, source.length(), tokens);
+	}
+
+	/**
+	 * 切割 source 的 [from, to) 區間，等同 source.subSequence(from, to).toString().split(separator)，
+	 * 結果的位置以 source 為基準寫入 tokens (會先清空)
+	 *
+	 * @return 切割後的項目數
+	 */
+	public int tokenize(CharSequence source, int from, int to, BetTokens tokens) {
+		tokens.reset(source);
+
+		switch (mode) {
+		case EVERY_CHAR:
+			if (from == to) {
+				tokens.add(from, to);
+			}
+			for (int i = from; i < to; i++) {
+				tokens.add(i, i + 1);
+			}
+			return tokens.size();
+		case SINGLE_CHAR:
+		case NON_WORD:
+			int start = from;
+			for (int i = from; i < to; i++) {
+				if (this.isSeparator(source.charAt(i))) {
+					tokens.add(start, i);
+					start = i + 1;
+				}
+			}
+			if (start == from) {
+				tokens.add(from, to);
+				return tokens.size();
+			}
+			tokens.add(start, to);
+			break;
+		default:
+			final Matcher matcher = pattern.matcher(source).region(from, to);
+			int index = from;
+			while (matcher.find()) {
+				/* 同 java 8 之後的 String.split，開頭的零寬度比對不產生空白項目 */
+				if (index == from && matcher.start() == from && matcher.end() == from) {
+					continue;
+				}
+				tokens.add(index, matcher.start());
+				index = matcher.end();
+			}
+			if (index == from) {
+				tokens.add(from, to);
+				return tokens.size();
+			}
+			tokens.add(index, to);
+			break;
+		}
+
+		tokens.trimTrailingEmpty();
+		return tokens.size();
+	}
+
+	/**
+	 * 只計算項目數，等同 source.split(separator).length
+	 */
+	public int count(CharSequence source) {
+		return this.count(source, 0, source.length());
+	}
+
+	/**
+	 * 只計算 [from, to) 區間的項目數
+	 */
+	public int count(CharSequence source, int from, int to) {
+		if (mode == Mode.EVERY_CHAR) {
+			return from == to ? 1 : to - from;
+		}
+		return this.tokenize(source, from, to, scratch.get());
+	}
+
+	/**
+	 * 切割並產生子字串，結果同 source.split(separator)
+	 */
+	public String[] split(CharSequence source) {
+		final BetTokens tokens = scratch.get();
+		final String[] result = new String[this.tokenize(source, tokens)];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = tokens.toString(i);
+		}
+		return result;
+	}
+
+	private boolean isSeparator(char c) {
+		if (mode == Mode.SINGLE_CHAR) {
+			return c == separatorChar;
+		}
+		return !((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_');
+	}
+
+}
@@ -0,0 +1,264 @@
+package pers.arjay.structure;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * <pre>
+ * {@link BetTokenizer} 切割後的結果，只記錄每個投注項於原始字串的起訖位置，不產生子字串。
+ *
+ * 物件可重複使用，每次 tokenize 前會清空內容，因此非 thread-safe。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public final class BetTokens {
+
+	/** {@link #parseNumber(int)} 不為數值時的回傳值 */
+	public static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+	/** bitset可容納的純數字代碼上限，涵蓋長度4以內 (最大為19999) */
+	static final int MAX_SEEN_KEY = 1 << 15;
+
+	/** 重複判斷用的暫存bitset，使用後皆還原為0 */
+	private static final ThreadLocal<long[]> seen = ThreadLocal.withInitial(() -> new long[MAX_SEEN_KEY >>> 6]);
+
+	private CharSequence source = "";
+
+	private int[] starts;
+
+	private int[] ends;
+
+	private int size;
+
+	public BetTokens() {
+		this(16);
+	}
+
+	public BetTokens(int capacity) {
+		this.starts = new int[capacity];
+		this.ends = new int[capacity];
+	}
+
+	void reset(CharSequence source) {
+		this.source = source;
+		this.size = 0;
+	}
+
+	void add(int start, int end) {
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+		}
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+	}
+
+	/** 移除結尾的空白項目，同 String.split(regex) 的行為 */
+	void trimTrailingEmpty() {
+		while (size > 0 && starts[size - 1] == ends[size - 1]) {
+			size--;
+		}
+	}
+
+	public CharSequence getSource() {
+		return source;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int start(int index) {
+		return starts[index];
+	}
+
+	public int end(int index) {
+		return ends[index];
+	}
+
+	public int length(int index) {
+		return ends[index] - starts[index];
+	}
+
+	/** 產生該項目的子字串，每次配置新的字串，僅建議用於錯誤訊息與 {@link #isDistinct()} 無法以bitset判斷的項目 */
+	public String toString(int index) {
+		return source.subSequence(starts[index], ends[index]).toString();
+	}
+
+	/** 同 {@link org.springframework.util.StringUtils#hasText(CharSequence)} */
+	public boolean hasText(int index) {
+		for (int i = starts[index]; i < ends[index]; i++) {
+			if (!Character.isWhitespace(source.charAt(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** 同 "[0-9]+" 的regex判斷 */
+	public boolean isDigits(int index) {
+		return isDigits(source, starts[index], ends[index]);
+	}
+
+	static boolean isDigits(CharSequence value, int start, int end) {
+		if (start == end) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			final char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 同 {@link Integer#parseInt(String)}，直接由字元解析不產生子字串
+	 *
+	 * @return 數值，不為數值或超出int範圍時回傳 {@link #NOT_A_NUMBER}
+	 */
+	public long parseNumber(int index) {
+		return parseNumber(source, starts[index], ends[index]);
+	}
+
+	static long parseNumber(CharSequence value, int start, int end) {
+		int i = start;
+		if (i == end) {
+			return NOT_A_NUMBER;
+		}
+
+		boolean negative = false;
+		final char first = value.charAt(i);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			if (++i == end) {
+				return NOT_A_NUMBER;
+			}
+		}
+
+		long number = 0;
+		for (; i < end; i++) {
+			final int digit = Character.digit(value.charAt(i), 10);
+			if (digit < 0) {
+				return NOT_A_NUMBER;
+			}
+			number = number * 10 + digit;
+			if (number > Integer.MAX_VALUE + 1L) {
+				return NOT_A_NUMBER;
+			}
+		}
+
+		number = negative ? -number : number;
+		return number > Integer.MAX_VALUE ? NOT_A_NUMBER : number;
+	}
+
+	/**
+	 * 純數字項目的代碼，10^長度 + 數值，例如 "1" 為 11、"01" 為 101，
+	 * 代碼相同即內容相同。
+	 *
+	 * @return 代碼，不為純數字或長度超過9時回傳 -1
+	 */
+	public int digitKey(int index) {
+		return digitKey(source, starts[index], ends[index]);
+	}
+
+	static int digitKey(CharSequence value, int start, int end) {
+		if (end - start > 9 || !isDigits(value, start, end)) {
+			return -1;
+		}
+
+		int key = 1;
+		for (int i = start; i < end; i++) {
+			key = key * 10 + (value.charAt(i) - '0');
+		}
+		return key;
+	}
+
+	/** 兩個項目內容是否相同 */
+	public boolean contentEquals(int index, int other) {
+		final int length = length(index);
+		if (length != length(other)) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (source.charAt(starts[index] + i) != source.charAt(starts[other] + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 各項目內容是否皆不重複。
+	 *
+	 * 長度4以內的純數字項目以bitset判斷，每個項目只需一次位元檢查；其餘改以HashSet判斷。
+	 */
+	public boolean isDistinct() {
+		final long[] bits = seen.get();
+		boolean distinct = true;
+		int checked = 0;
+		for (; checked < size; checked++) {
+			final int key = digitKey(checked);
+			if (key < 0 || key >= MAX_SEEN_KEY) {
+				break;
+			}
+			if ((bits[key >>> 6] & (1L << key)) != 0) {
+				distinct = false;
+				break;
+			}
+			bits[key >>> 6] |= 1L << key;
+		}
+
+		/* 還原暫存的bitset */
+		for (int i = 0; i < checked; i++) {
+			final int key = digitKey(i);
+			bits[key >>> 6] &= ~(1L << key);
+		}
+
+		if (!distinct || checked == size) {
+			return distinct;
+		}
+
+		final HashSet<String> values = new HashSet<>(size * 2);
+		for (int i = 0; i < size; i++) {
+			if (!values.add(toString(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 同 {@link #isDistinct()}，用於已切割好的字串
+	 */
+	static boolean isDistinct(String[] values) {
+		final long[] bits = seen.get();
+		boolean distinct = true;
+		int checked = 0;
+		for (; checked < values.length; checked++) {
+			final int key = digitKey(values[checked], 0, values[checked].length());
+			if (key < 0 || key >= MAX_SEEN_KEY) {
+				break;
+			}
+			if ((bits[key >>> 6] & (1L << key)) != 0) {
+				distinct = false;
+				break;
+			}
+			bits[key >>> 6] |= 1L << key;
+		}
+
+		for (int i = 0; i < checked; i++) {
+			final int key = digitKey(values[i], 0, values[i].length());
+			bits[key >>> 6] &= ~(1L << key);
+		}
+
+		if (!distinct || checked == values.length) {
+			return distinct;
+		}
+		return new HashSet<>(Arrays.asList(values)).size() == values.length;
+	}
+
+}
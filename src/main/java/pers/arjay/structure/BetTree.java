@@ -1,8 +1,16 @@
 package pers.arjay.structure;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.springframework.util.CollectionUtils;
 
@@ -59,6 +67,28 @@ public class BetTree {
 		return bets;
 	}
 
+	/**
+	 * 同 {@link #generateBets(Collection, String, String)} 的內容及順序，但逐注產生，
+	 * 只保留目前路徑，不一次放入集合
+	 */
+	public Iterator<String> iterator(String parent, String separator) {
+		return new BetIterator(this, parent, separator);
+	}
+
+	/**
+	 * 同 {@link #iterator(String, String)}，使用 parallel() 時依第一層的分支分割
+	 */
+	public Stream<String> stream(String parent, String separator) {
+		if (CollectionUtils.isEmpty(childs)) {
+			return Stream.of(parent + separator + value);
+		}
+
+		final String path = parent + separator + value;
+		return new ArrayList<>(childs).stream().flatMap(child -> StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(child.iterator(path, separator), Spliterator.ORDERED | Spliterator.NONNULL),
+				false));
+	}
+
 	public void addNode(Integer level, String value) {
 		this.addNode(level, value, false);
 	}
@@ -77,4 +107,58 @@ public class BetTree {
 		}
 	}
 
+	/**
+	 * 以堆疊走訪的深度優先迭代器，堆疊深度即為投注的位置數
+	 */
+	private static final class BetIterator implements Iterator<String> {
+
+		private final String separator;
+
+		private final Deque<Iterator<BetTree>> branches = new ArrayDeque<>();
+
+		private final Deque<String> paths = new ArrayDeque<>();
+
+		private String next;
+
+		private BetIterator(BetTree tree, String parent, String separator) {
+			this.separator = separator;
+			this.descend(tree, parent);
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && !branches.isEmpty()) {
+				final Iterator<BetTree> branch = branches.peek();
+				if (branch.hasNext()) {
+					this.descend(branch.next(), paths.peek());
+				} else {
+					branches.pop();
+					paths.pop();
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public String next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final String bet = next;
+			next = null;
+			return bet;
+		}
+
+		private void descend(BetTree tree, String parent) {
+			final String path = parent + separator + tree.value;
+			if (CollectionUtils.isEmpty(tree.childs)) {
+				next = path;
+			} else {
+				branches.push(tree.childs.iterator());
+				paths.push(path);
+			}
+		}
+
+	}
+
 }
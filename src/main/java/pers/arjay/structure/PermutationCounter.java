@@ -0,0 +1,282 @@
+package pers.arjay.structure;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <pre>
+ * 計算各位置各取一個細項、且細項皆不重複的排列注數，不需建立 {@link BetTree}。
+ *
+ * 123,234,345 共14注
+ *
+ * 以位置集合的分割做排容 (inclusion–exclusion)：
+ *
+ * 設 w(B) = Σv Π(i∈B) mi(v)，mi(v) 為值 v 於位置 i 出現的次數，
+ * 則不重複注數 = Σ(位置的所有分割π) Π(B∈π) (-1)^(|B|-1) (|B|-1)! w(B)
+ *
+ * 以位置的 bitmask 做子集合DP，時間為 O(3^k + 2^k * V)，k 為位置數，V 為相異值數，
+ * 與每個位置的細項數量無關，0123456789 十個位置也只需數萬次運算。
+ *
+ * 位置數超過 {@link #MAX_POSITIONS}，或各位置細項數的乘積超出long範圍時，改為逐位置計算：
+ * 狀態為已選且之後位置仍會出現的細項集合，相同集合合併計數，集合數不超過 BetTree 同一層的節點數。
+ *
+ * 同一位置內重複的細項會分別計算，與 {@link BetTree#count(int)} 相同。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public final class PermutationCounter {
+
+	/** 以子集合DP計算的最多位置數，超過時逐位置計算 */
+	public static final int MAX_POSITIONS = 16;
+
+	/** 逐位置計算時每個位置的狀態數上限，BetTree 同一層至少需要同樣多的節點 */
+	public static final int MAX_STATES = 1 << 20;
+
+	/** 無法計算的注數：注數超出long範圍，或逐位置計算的狀態數超過 {@link #MAX_STATES} */
+	public static final long UNCOUNTABLE = -1;
+
+	private PermutationCounter() {
+	}
+
+	/**
+	 * @param positions
+	 *            各位置的細項
+	 * @return 不重複注數
+	 */
+	public static long count(String[][] positions) {
+		final Map<String, Integer> ids = new HashMap<>();
+		final int[][] values = new int[positions.length][];
+
+		for (int i = 0; i < positions.length; i++) {
+			values[i] = new int[positions[i].length];
+			for (int j = 0; j < positions[i].length; j++) {
+				Integer id = ids.get(positions[i][j]);
+				if (id == null) {
+					id = ids.size();
+					ids.put(positions[i][j], id);
+				}
+				values[i][j] = id;
+			}
+		}
+
+		return count(values);
+	}
+
+	/**
+	 * @param positions
+	 *            各位置的細項代碼，相同代碼代表相同細項
+	 * @return 不重複注數，無法計算時為 {@link #UNCOUNTABLE}
+	 */
+	public static long count(int[][] positions) {
+		final int k = positions.length;
+		if (k == 0) {
+			return 0;
+		}
+
+		int total = 0;
+		for (int[] position : positions) {
+			if (position.length == 0) {
+				return 0;
+			}
+			total += position.length;
+		}
+
+		/* 相異值壓縮為 0 ~ V-1 */
+		final int[] distinct = new int[total];
+		int offset = 0;
+		for (int[] position : positions) {
+			System.arraycopy(position, 0, distinct, offset, position.length);
+			offset += position.length;
+		}
+		Arrays.sort(distinct);
+		int v = 0;
+		for (int i = 0; i < total; i++) {
+			if (i == 0 || distinct[i] != distinct[i - 1]) {
+				distinct[v++] = distinct[i];
+			}
+		}
+
+		/* 位置數大於相異值數時必定重複 */
+		if (k > v) {
+			return 0;
+		}
+
+		final int[][] compressed = new int[k][];
+		for (int i = 0; i < k; i++) {
+			compressed[i] = new int[positions[i].length];
+			for (int j = 0; j < positions[i].length; j++) {
+				compressed[i][j] = Arrays.binarySearch(distinct, 0, v, positions[i][j]);
+			}
+		}
+
+		if (k > MAX_POSITIONS) {
+			return countByPosition(compressed, v);
+		}
+
+		final int[][] multiplicity = new int[k][v];
+		for (int i = 0; i < k; i++) {
+			for (int value : compressed[i]) {
+				multiplicity[i][value]++;
+			}
+		}
+
+		/*
+		 * 子集合DP的中間值可能溢位，注數不超過long範圍時結果才正確。
+		 * 依細項數由少到多選取，第 i 個位置最多還有 min(細項數, (V - i) * 同值最多重複數) 種選法，
+		 * 此上限超出long範圍時改為逐位置計算
+		 */
+		final long[] sizes = new long[k];
+		for (int i = 0; i < k; i++) {
+			int maxMultiplicity = 0;
+			for (int count : multiplicity[i]) {
+				maxMultiplicity = Math.max(maxMultiplicity, count);
+			}
+			sizes[i] = (long) positions[i].length << 32 | maxMultiplicity;
+		}
+		Arrays.sort(sizes);
+		long upperBound = 1;
+		for (int i = 0; i < k; i++) {
+			final long options = Math.min(sizes[i] >>> 32, (long) (v - i) * (int) sizes[i]);
+			if (upperBound > Long.MAX_VALUE / options) {
+				return countByPosition(compressed, v);
+			}
+			upperBound *= options;
+		}
+
+		final int full = (1 << k) - 1;
+
+		/* weight[B] = Σv Π(i∈B) mi(v) */
+		final long[] weight = new long[full + 1];
+		final long[] product = new long[full + 1];
+		product[0] = 1;
+		for (int value = 0; value < v; value++) {
+			for (int b = 1; b <= full; b++) {
+				final int low = Integer.numberOfTrailingZeros(b);
+				product[b] = product[b & (b - 1)] * multiplicity[low][value];
+				weight[b] += product[b];
+			}
+		}
+
+		/* 每個區塊的係數 (-1)^(|B|-1) (|B|-1)! */
+		final long[] factorial = new long[k];
+		factorial[0] = 1;
+		for (int i = 1; i < k; i++) {
+			factorial[i] = factorial[i - 1] * i;
+		}
+		for (int b = 1; b <= full; b++) {
+			final int size = Integer.bitCount(b);
+			weight[b] *= ((size & 1) == 1 ? 1 : -1) * factorial[size - 1];
+		}
+
+		/*
+		 * partitions[S] = Σ(B⊆S, B含S最低位) weight[B] * partitions[S\B]。
+		 * 中間值可能溢位，但皆為整數環運算，結果不超過 upperBound 時即為正確值。
+		 */
+		final long[] partitions = new long[full + 1];
+		partitions[0] = 1;
+		for (int s = 1; s <= full; s++) {
+			final int low = s & -s;
+			final int rest = s ^ low;
+			long sum = 0;
+			for (int sub = rest;; sub = (sub - 1) & rest) {
+				sum += weight[sub | low] * partitions[rest ^ sub];
+				if (sub == 0) {
+					break;
+				}
+			}
+			partitions[s] = sum;
+		}
+
+		return partitions[full];
+	}
+
+	/**
+	 * 逐位置計算，與 BetTree 逐層展開相同，但相同的已選集合只保留一份計數
+	 *
+	 * @param positions
+	 *            各位置的細項代碼，代碼為 0 ~ v-1
+	 * @param v
+	 *            相異值數
+	 * @return 不重複注數，注數超出long範圍或狀態數超過 {@link #MAX_STATES} 時為 {@link #UNCOUNTABLE}
+	 */
+	static long countByPosition(int[][] positions, int v) {
+		final int k = positions.length;
+
+		/* 依相異細項數由少到多選取，第 i 個位置至少還有 (相異細項數 - i) 種選法，此下限超出long範圍時不需展開 */
+		final int[] distinctCounts = new int[k];
+		for (int i = 0; i < k; i++) {
+			final BitSet values = new BitSet(v);
+			for (int value : positions[i]) {
+				values.set(value);
+			}
+			distinctCounts[i] = values.cardinality();
+		}
+		Arrays.sort(distinctCounts);
+		long lowerBound = 1;
+		for (int i = 0; i < k && distinctCounts[i] > i; i++) {
+			if (lowerBound > Long.MAX_VALUE / (distinctCounts[i] - i)) {
+				return UNCOUNTABLE;
+			}
+			lowerBound *= distinctCounts[i] - i;
+		}
+
+		/* 細項最後出現的位置，之後不會再衝突，自狀態中移除 */
+		final int[] lastPosition = new int[v];
+		for (int i = 0; i < k; i++) {
+			for (int value : positions[i]) {
+				lastPosition[value] = i;
+			}
+		}
+
+		Map<BitSet, Long> states = new HashMap<>();
+		states.put(new BitSet(v), 1L);
+		try {
+			for (int i = 0; i < k; i++) {
+				final Map<BitSet, Long> next = new HashMap<>();
+				for (Map.Entry<BitSet, Long> state : states.entrySet()) {
+					final BitSet used = state.getKey();
+					final long ways = state.getValue();
+
+					BitSet remaining = used;
+					for (int value = used.nextSetBit(0); value >= 0; value = used.nextSetBit(value + 1)) {
+						if (lastPosition[value] == i) {
+							if (remaining == used) {
+								remaining = (BitSet) used.clone();
+							}
+							remaining.clear(value);
+						}
+					}
+
+					/* 同一位置內重複的細項分別計算 */
+					for (int value : positions[i]) {
+						if (used.get(value)) {
+							continue;
+						}
+						BitSet chosen = remaining;
+						if (lastPosition[value] > i) {
+							chosen = (BitSet) remaining.clone();
+							chosen.set(value);
+						}
+						next.merge(chosen, ways, Math::addExact);
+						if (next.size() > MAX_STATES) {
+							return UNCOUNTABLE;
+						}
+					}
+				}
+				states = next;
+			}
+
+			long count = 0;
+			for (long ways : states.values()) {
+				count = Math.addExact(count, ways);
+			}
+			return count;
+		} catch (ArithmeticException e) {
+			return UNCOUNTABLE;
+		}
+	}
+
+}
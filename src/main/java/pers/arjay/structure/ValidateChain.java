@@ -1,12 +1,8 @@
 package pers.arjay.structure;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
+import java.util.regex.Pattern;
 
-import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import pers.arjay.Separators;
@@ -73,6 +69,11 @@ public class ValidateChain {
 
 	private String itemSeparator;
 
+	private BetTokenizer itemTokenizer;
+
+	/** 細項切割結果，重複使用 */
+	private final BetTokens items = new BetTokens();
+
 	private Long betCounts;
 
 	private Long totalAmount;
@@ -83,9 +84,16 @@ public class ValidateChain {
 
 	private SalesUnit salesUnit;
 
-	private int betCounter = 0;
+	private long betCounter = 0;
+
+	/** 是否以 {@link ValidateResult} 回傳驗證結果而不拋出例外 */
+	private boolean resultMode = false;
+
+	private ValidateError error;
 
-	private enum SalesUnit {
+	private Object[] errorArgs;
+
+	enum SalesUnit {
 		Yuan, jiao;
 
 		public static SalesUnit valueOf(int unit) {
@@ -213,11 +221,16 @@ public class ValidateChain {
 		this.betSeparator = betSeparator;
 		this.itemSeparator = itemSeparator;
 
-		this.bets = betDetail.split(betSeparator);
+		this.itemTokenizer = BetTokenizer.of(itemSeparator);
+
+		this.bets = BetTokenizer.of(betSeparator).split(betDetail);
 
 		/* 如果一開始先取代資料後，切割出來的投注項會有問題 */
-		for (int i = 0; i < bets.length; i++) {
-			bets[i] = bets[i].replaceAll(replace, "");
+		if (!replace.isEmpty()) {
+			Pattern replacePattern = Pattern.compile(replace);
+			for (int i = 0; i < bets.length; i++) {
+				bets[i] = replacePattern.matcher(bets[i]).replaceAll("");
+			}
 		}
 
 	}
@@ -229,9 +242,32 @@ public class ValidateChain {
 	 *            驗證集合
 	 */
 	public ValidateChain betIn(final Collection<String> values) {
+		if (error != null) {
+			return this;
+		}
+
 		for (String bet : bets) {
 			if (!values.contains(bet)) {
-				throw new SampleException("投注内容有誤，錯誤項目:{}", bet);
+				return this.fail(ValidateError.BET_IN, bet);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * 投注內容存在於傳入集合內
+	 * 
+	 * @param domain
+	 *            驗證集合
+	 */
+	public ValidateChain betIn(final BetDomain domain) {
+		if (error != null) {
+			return this;
+		}
+
+		for (String bet : bets) {
+			if (!domain.contains(bet)) {
+				return this.fail(ValidateError.BET_IN, bet);
 			}
 		}
 		return this;
@@ -246,14 +282,17 @@ public class ValidateChain {
 	 *            最大值
 	 */
 	public ValidateChain betNumberBetween(final int min, final int max) {
+		if (error != null) {
+			return this;
+		}
+
 		for (String bet : bets) {
-			try {
-				Integer betNumber = Integer.parseInt(bet);
-				if (betNumber < min || betNumber > max) {
-					throw new SampleException("投注號碼數值需落於{}～{}之間,投注内容為：{}", min, max, bet);
-				}
-			} catch (NumberFormatException e) {
-				throw new SampleException("投注號碼不為數值：{}, separator:{}", bet, betSeparator);
+			long betNumber = BetTokens.parseNumber(bet, 0, bet.length());
+			if (betNumber == BetTokens.NOT_A_NUMBER) {
+				return this.fail(ValidateError.BET_NOT_NUMBER, bet, betSeparator);
+			}
+			if (betNumber < min || betNumber > max) {
+				return this.fail(ValidateError.BET_NUMBER_BETWEEN, min, max, bet);
 			}
 		}
 		return this;
@@ -261,9 +300,13 @@ public class ValidateChain {
 
 	/** 投注內容須為數值 */
 	public ValidateChain betIsNumber() {
+		if (error != null) {
+			return this;
+		}
+
 		for (String bet : bets) {
-			if (!bet.matches("[0-9]+")) {
-				throw new SampleException("內含不為數值之文字：{}, separator:{}", betDetail, betSeparator);
+			if (!BetTokens.isDigits(bet, 0, bet.length())) {
+				return this.fail(ValidateError.BET_IS_NUMBER, betDetail, betSeparator);
 			}
 		}
 		return this;
@@ -278,8 +321,12 @@ public class ValidateChain {
 	 *            最大長度
 	 */
 	public ValidateChain betLengthBetween(int min, int max) {
+		if (error != null) {
+			return this;
+		}
+
 		if (bets.length < min || bets.length > max) {
-			throw new SampleException("長度需落於{}～{}之間,投注内容長度為：{}", min, max, bets.length);
+			return this.fail(ValidateError.BET_LENGTH_BETWEEN, min, max, bets.length);
 		}
 		return this;
 	}
@@ -291,8 +338,12 @@ public class ValidateChain {
 	 *            驗證長度
 	 */
 	public ValidateChain betLengthEquals(int length) {
+		if (error != null) {
+			return this;
+		}
+
 		if (bets.length != length) {
-			throw new SampleException("投注内容長度不為：{} bets:{}", length, bets.length);
+			return this.fail(ValidateError.BET_LENGTH_EQUALS, length, bets.length);
 		}
 		return this;
 	}
@@ -304,8 +355,12 @@ public class ValidateChain {
 	 *            驗證長度
 	 */
 	public ValidateChain betLengthGreatEqualsThen(int length) {
+		if (error != null) {
+			return this;
+		}
+
 		if (bets.length < length) {
-			throw new SampleException("長度需大於{},投注内容長度為：{}", length, bets.length);
+			return this.fail(ValidateError.BET_LENGTH_GREAT_EQUALS, length, bets.length);
 		}
 		return this;
 	}
@@ -317,16 +372,24 @@ public class ValidateChain {
 	 *            驗證長度
 	 */
 	public ValidateChain betLengthLessEqualsThen(int length) {
+		if (error != null) {
+			return this;
+		}
+
 		if (bets.length > length) {
-			throw new SampleException("長度需小於{},投注内容長度為：{}", length, bets.length);
+			return this.fail(ValidateError.BET_LENGTH_LESS_EQUALS, length, bets.length);
 		}
 		return this;
 	}
 
 	/** 投注內容不得為空 */
 	public ValidateChain betHasText() {
+		if (error != null) {
+			return this;
+		}
+
 		if (!StringUtils.hasText(betDetail)) {
-			throw new SampleException("投注内容為空");
+			return this.fail(ValidateError.BET_HAS_TEXT);
 		}
 
 		return this;
@@ -334,21 +397,27 @@ public class ValidateChain {
 
 	/** 投注內容不得重複 */
 	public ValidateChain betNotRepeat() {
-		if (new HashSet<>(Arrays.asList(bets)).size() != bets.length) {
-			throw new SampleException("投注内容有值重複,{}", betDetail);
+		if (error != null) {
+			return this;
+		}
+
+		if (!BetTokens.isDistinct(bets)) {
+			return this.fail(ValidateError.BET_NOT_REPEAT, betDetail);
 		}
 		return this;
 	}
 
 	/** 透過分割運算後，細項須為數值 */
 	public ValidateChain itemIsNumber() {
+		if (error != null) {
+			return this;
+		}
+
 		for (String bet : bets) {
-			for (String item : bet.split(itemSeparator)) {
-				if (!StringUtils.hasText(item)) {
-					continue;
-				}
-				if (!item.matches("[0-9]+")) {
-					throw new SampleException("投注細項須為數值:{}", item);
+			itemTokenizer.tokenize(bet, items);
+			for (int i = 0; i < items.size(); i++) {
+				if (items.hasText(i) && !items.isDigits(i)) {
+					return this.fail(ValidateError.ITEM_IS_NUMBER, items.toString(i));
 				}
 			}
 		}
@@ -364,20 +433,24 @@ public class ValidateChain {
 	 *            最大值
 	 */
 	public ValidateChain itemNumberBetween(final int min, final int max) {
+		if (error != null) {
+			return this;
+		}
+
 		for (String bet : bets) {
-			for (String item : bet.split(itemSeparator)) {
-				if (!StringUtils.hasText(item)) {
+			itemTokenizer.tokenize(bet, items);
+			for (int i = 0; i < items.size(); i++) {
+				if (!items.hasText(i)) {
 					continue;
 				}
 
-				try {
-					Integer betNumber = Integer.parseInt(item);
-					if (betNumber < min || betNumber > max) {
-						throw new SampleException("投注細項數值需落於{}～{}之間,細項内容為：{}", min, max, item);
-					}
-				} catch (NumberFormatException e) {
-					throw new SampleException("投注細項不為數值：{}, betSeparator:{}, itemSeparator:{}", item, betSeparator,
-							itemSeparator);
+				long betNumber = items.parseNumber(i);
+				if (betNumber == BetTokens.NOT_A_NUMBER) {
+					return this.fail(ValidateError.ITEM_NOT_NUMBER, items.toString(i),
+							betSeparator, itemSeparator);
+				}
+				if (betNumber < min || betNumber > max) {
+					return this.fail(ValidateError.ITEM_NUMBER_BETWEEN, min, max, items.toString(i));
 				}
 			}
 		}
@@ -393,10 +466,14 @@ public class ValidateChain {
 	 *            最大長度
 	 */
 	public ValidateChain itemLengthBetween(int min, int max) {
+		if (error != null) {
+			return this;
+		}
+
 		for (String item : bets) {
-			Integer itemLength = item.split(itemSeparator).length;
+			int itemLength = itemTokenizer.count(item);
 			if (itemLength < min || itemLength > max) {
-				throw new SampleException("細項長度需落於{}～{}之間,細項長度為：{}", min, max, item.length());
+				return this.fail(ValidateError.ITEM_LENGTH_BETWEEN, min, max, item.length());
 			}
 		}
 		return this;
@@ -409,9 +486,13 @@ public class ValidateChain {
 	 *            驗證長度
 	 */
 	public ValidateChain itemLengthEquals(int length) {
+		if (error != null) {
+			return this;
+		}
+
 		for (String item : bets) {
-			if (item.split(itemSeparator).length != length) {
-				throw new SampleException("細項投注内容長度不為：{} , {}", length, item);
+			if (itemTokenizer.count(item) != length) {
+				return this.fail(ValidateError.ITEM_LENGTH_EQUALS, length, item);
 			}
 		}
 		return this;
@@ -424,9 +505,13 @@ public class ValidateChain {
 	 *            驗證長度
 	 */
 	public ValidateChain itemLengthGreatEqualsThen(int length) {
+		if (error != null) {
+			return this;
+		}
+
 		for (String item : bets) {
-			if (item.split(itemSeparator).length < length) {
-				throw new SampleException("細項長度需大於{},細項長度為：{}", length, item.length());
+			if (itemTokenizer.count(item) < length) {
+				return this.fail(ValidateError.ITEM_LENGTH_GREAT_EQUALS, length, item.length());
 			}
 		}
 		return this;
@@ -439,9 +524,13 @@ public class ValidateChain {
 	 *            驗證長度
 	 */
 	public ValidateChain itemLengthLessEqualsThen(int length) {
+		if (error != null) {
+			return this;
+		}
+
 		for (String item : bets) {
-			if (item.split(itemSeparator).length > length) {
-				throw new SampleException("細項長度需小於{},細項長度為：{}", length, item.length());
+			if (itemTokenizer.count(item) > length) {
+				return this.fail(ValidateError.ITEM_LENGTH_LESS_EQUALS, length, item.length());
 			}
 		}
 		return this;
@@ -449,9 +538,13 @@ public class ValidateChain {
 
 	/** 細項內容不得為空值 */
 	public ValidateChain itemNotBlank() {
+		if (error != null) {
+			return this;
+		}
+
 		for (String item : bets) {
 			if (!StringUtils.hasText(item)) {
-				throw new SampleException("投注細項為空");
+				return this.fail(ValidateError.ITEM_NOT_BLANK);
 			}
 		}
 		return this;
@@ -461,9 +554,14 @@ public class ValidateChain {
 	 * 透過分割運算後，細項不得重複
 	 */
 	public ValidateChain itemNotRepeat() {
+		if (error != null) {
+			return this;
+		}
+
 		for (String item : bets) {
-			if (new HashSet<>(Arrays.asList(item.split(itemSeparator))).size() != item.split(itemSeparator).length) {
-				throw new SampleException("細項有值重複, {}", item);
+			itemTokenizer.tokenize(item, items);
+			if (!items.isDistinct()) {
+				return this.fail(ValidateError.ITEM_NOT_REPEAT, item);
 			}
 		}
 
@@ -472,12 +570,18 @@ public class ValidateChain {
 
 	/** 投注注數等於計算注數 */
 	public ValidateChain betCountsEqualsBets() {
-		this.checkBetCounterNotProcessed();
+		if (error != null) {
+			return this;
+		}
+
+		if (betCounter != 0) {
+			return this.fail(ValidateError.BET_COUNTER_PROCESSED);
+		}
 
 		betCounter = bets.length;
 
 		if (betCounts != betCounter) {
-			throw new SampleException("[betCountsEqualsBets] 投注注數不符：{}:{}", betCounts, bets.length);
+			return this.fail(ValidateError.BET_COUNTS_EQUALS_BETS, betCounts, bets.length);
 		}
 		return this;
 	}
@@ -489,11 +593,22 @@ public class ValidateChain {
 	 *            需投注長度 (m值)
 	 */
 	public ValidateChain betCountsEqualsCombinBets(Integer betLength) {
-		this.checkBetCounterNotProcessed();
+		if (error != null) {
+			return this;
+		}
 
-		betCounter = CombinUtil.combin(bets.length, betLength);
-		if (betCounter != betCounts) {
-			throw new SampleException("[betCountsEqualsCombinBets] 投注注數不符：傳入注數{}, 計算注數：{}", betCounts, betCounter);
+		if (betCounter != 0) {
+			return this.fail(ValidateError.BET_COUNTER_PROCESSED);
+		}
+
+		/* 組合數超出long範圍時無法計算 (UNCOUNTABLE)，與任何投注注數皆不符 */
+		try {
+			betCounter = CombinUtil.combination(bets.length, betLength);
+		} catch (ArithmeticException e) {
+			betCounter = PermutationCounter.UNCOUNTABLE;
+		}
+		if (betCounter == PermutationCounter.UNCOUNTABLE || betCounter != betCounts) {
+			return this.fail(ValidateError.BET_COUNTS_EQUALS_COMBIN_BETS, betCounts, betCounter);
 		}
 
 		return this;
@@ -518,16 +633,25 @@ public class ValidateChain {
 	 * </pre>
 	 */
 	public ValidateChain betCountsEqualsPermutationItems() {
-		this.checkBetCounterNotProcessed();
+		if (error != null) {
+			return this;
+		}
 
-		List<BetTree> tree = this.generatorBetTree();
+		if (betCounter != 0) {
+			return this.fail(ValidateError.BET_COUNTER_PROCESSED);
+		}
 
-		for (BetTree root : tree) {
-			betCounter += root.count(bets.length);
+		String[][] positions = new String[bets.length][];
+		for (int level = 0; level < bets.length; level++) {
+			positions[level] = itemTokenizer.split(bets[level]);
 		}
 
-		if (betCounter != betCounts) {
-			throw new SampleException("[betCountsEqualsPermutationItems] 投注注數不符：傳入注數{}, 計算注數：{}", betCounts,
+		/* 與 BetTree.count 相同，只有一個位置時注數為0 */
+		betCounter = bets.length < 2 ? 0 : PermutationCounter.count(positions);
+
+		/* 無法計算的注數 (UNCOUNTABLE) 與任何投注注數皆不符 */
+		if (betCounter == PermutationCounter.UNCOUNTABLE || betCounter != betCounts) {
+			return this.fail(ValidateError.BET_COUNTS_EQUALS_PERMUTATION_ITEMS, betCounts,
 					betCounter);
 		}
 
@@ -538,16 +662,22 @@ public class ValidateChain {
 	 * 透過分割運算後，投注注數等於細項注數
 	 */
 	public ValidateChain betCountsEqualsSumItems() {
-		this.checkBetCounterNotProcessed();
+		if (error != null) {
+			return this;
+		}
+
+		if (betCounter != 0) {
+			return this.fail(ValidateError.BET_COUNTER_PROCESSED);
+		}
 
 		for (String bet : bets) {
-			if (!StringUtils.hasText(bet)) {
-				betCounter += bet.split(itemSeparator).length;
+			if (StringUtils.hasText(bet)) {
+				betCounter += itemTokenizer.count(bet);
 			}
 		}
 
 		if (this.betCounts != betCounter) {
-			throw new SampleException("[betCountsEqualsSumItems] 投注注數不符：{}:{}", betCounts, betCounter);
+			return this.fail(ValidateError.BET_COUNTS_EQUALS_SUM_ITEMS, betCounts, betCounter);
 		}
 		return this;
 	}
@@ -556,10 +686,16 @@ public class ValidateChain {
 	 * 需先執行betCounts* 相關驗證。
 	 */
 	public ValidateChain totalAmountValid() {
-		this.checkBetCounterIsProcessed();
+		if (error != null) {
+			return this;
+		}
+
+		if (betCounter == 0) {
+			return this.fail(ValidateError.BET_COUNTER_NOT_PROCESSED);
+		}
 
 		if (totalAmount != (betCounter * multiple * unit * (salesUnit == SalesUnit.Yuan ? 10000L : 1000L))) {
-			throw new SampleException("[AmountEqualsBetCalculate]投注金额不对:{}:{}", totalAmount,
+			return this.fail(ValidateError.TOTAL_AMOUNT, totalAmount,
 					betCounter * multiple * unit * (salesUnit == SalesUnit.Yuan ? 10000L : 1000L));
 		}
 		return this;
@@ -577,44 +713,27 @@ public class ValidateChain {
 		return this;
 	}
 
-	private void checkBetCounterIsProcessed() {
-		if (betCounter == 0) {
-			throw new SampleException("請先執行betCounts* 相關驗證。");
-		}
-	}
-
-	private void checkBetCounterNotProcessed() {
-		if (betCounter != 0) {
-			throw new SampleException("已執行betCounts* 相關驗證，請確認流程。");
-		}
-	}
-
 	/**
-	 * 產生投注的排列組合樹
+	 * 驗證失敗，預設拋出 {@link SampleException}，{@link #resultMode()} 時只記錄第一個錯誤
 	 */
-	private List<BetTree> generatorBetTree() {
-		List<BetTree> tree = new ArrayList<>();
-
-		for (int level = 0; level < bets.length; level++) {
-			if (CollectionUtils.isEmpty(tree)) {
-				for (String root : bets[level].split(itemSeparator)) {
-					tree.add(new BetTree(root));
-				}
-			} else {
-				for (BetTree root : tree) {
-					for (String item : bets[level].split(itemSeparator)) {
-						root.addNode(level, item);
-					}
-				}
-			}
+	private ValidateChain fail(ValidateError error, Object... args) {
+		if (!resultMode) {
+			throw error.exception(args);
 		}
-
-		return tree;
+		if (this.error == null) {
+			this.error = error;
+			this.errorArgs = args;
+		}
+		return this;
 	}
 
 	public ValidateChain isSingleNote() {
-		if (betDetail.split(Separators.comma).length > 1) {
-			throw new SampleException("投注项目不得为复式。");
+		if (error != null) {
+			return this;
+		}
+
+		if (ValidatePlan.isCompound(betDetail)) {
+			return this.fail(ValidateError.SINGLE_NOTE);
 		}
 		return this;
 	}
@@ -623,4 +742,31 @@ public class ValidateChain {
 		return bets;
 	}
 
+	/**
+	 * <pre>
+	 * 改為不拋出例外，驗證失敗時只記錄第一個錯誤代碼，之後的驗證皆略過，
+	 * 最後以 {@link #getResult()} 取得結果，錯誤訊息於讀取時才產生。
+	 * 
+	 * ValidateResult result = new ValidateChain(slip, Separators.comma)
+	 * 		.resultMode()
+	 * 		.itemIsNumber()
+	 * 		.betCountsEqualsPermutationItems()
+	 * 		.getResult();
+	 * </pre>
+	 */
+	public ValidateChain resultMode() {
+		this.resultMode = true;
+		return this;
+	}
+
+	/** 目前為止是否皆驗證通過 */
+	public boolean isValid() {
+		return error == null;
+	}
+
+	/** 驗證結果 */
+	public ValidateResult getResult() {
+		return error == null ? ValidateResult.valid(0) : ValidateResult.invalid(0, error, errorArgs);
+	}
+
 }
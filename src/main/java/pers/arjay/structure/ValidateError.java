@@ -0,0 +1,116 @@
+package pers.arjay.structure;
+
+import org.slf4j.helpers.MessageFormatter;
+
+import pers.arjay.exception.SampleException;
+
+/**
+ * <pre>
+ * 投注項驗證的錯誤代碼，訊息格式同 slf4j 的 "{}" 佔位符號。
+ *
+ * 驗證失敗時只記錄代碼與參數，需要時才以 {@link #format(Object...)} 產生訊息。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public enum ValidateError {
+
+	BET_HAS_TEXT("betHasText", "投注内容為空"),
+
+	SINGLE_NOTE("isSingleNote", "投注项目不得为复式。"),
+
+	BET_LENGTH_BETWEEN("betLengthBetween", "長度需落於{}～{}之間,投注内容長度為：{}"),
+
+	BET_LENGTH_EQUALS("betLengthEquals", "投注内容長度不為：{} bets:{}"),
+
+	BET_LENGTH_GREAT_EQUALS("betLengthGreatEqualsThen", "長度需大於{},投注内容長度為：{}"),
+
+	BET_LENGTH_LESS_EQUALS("betLengthLessEqualsThen", "長度需小於{},投注内容長度為：{}"),
+
+	BET_IN("betIn", "投注内容有誤，錯誤項目:{}"),
+
+	BET_NOT_NUMBER("betNumberBetween", "投注號碼不為數值：{}, separator:{}"),
+
+	BET_NUMBER_BETWEEN("betNumberBetween", "投注號碼數值需落於{}～{}之間,投注内容為：{}"),
+
+	BET_IS_NUMBER("betIsNumber", "內含不為數值之文字：{}, separator:{}"),
+
+	BET_NOT_REPEAT("betNotRepeat", "投注内容有值重複,{}"),
+
+	ITEM_IS_NUMBER("itemIsNumber", "投注細項須為數值:{}"),
+
+	ITEM_NOT_NUMBER("itemNumberBetween", "投注細項不為數值：{}, betSeparator:{}, itemSeparator:{}"),
+
+	ITEM_NUMBER_BETWEEN("itemNumberBetween", "投注細項數值需落於{}～{}之間,細項内容為：{}"),
+
+	ITEM_LENGTH_BETWEEN("itemLengthBetween", "細項長度需落於{}～{}之間,細項長度為：{}"),
+
+	ITEM_LENGTH_EQUALS("itemLengthEquals", "細項投注内容長度不為：{} , {}"),
+
+	ITEM_LENGTH_GREAT_EQUALS("itemLengthGreatEqualsThen", "細項長度需大於{},細項長度為：{}"),
+
+	ITEM_LENGTH_LESS_EQUALS("itemLengthLessEqualsThen", "細項長度需小於{},細項長度為：{}"),
+
+	ITEM_NOT_BLANK("itemNotBlank", "投注細項為空"),
+
+	ITEM_NOT_REPEAT("itemNotRepeat", "細項有值重複, {}"),
+
+	BET_COUNTS_EQUALS_BETS("betCountsEqualsBets", "[betCountsEqualsBets] 投注注數不符：{}:{}"),
+
+	BET_COUNTS_EQUALS_COMBIN_BETS("betCountsEqualsCombinBets", "[betCountsEqualsCombinBets] 投注注數不符：傳入注數{}, 計算注數：{}"),
+
+	BET_COUNTS_EQUALS_PERMUTATION_ITEMS("betCountsEqualsPermutationItems",
+			"[betCountsEqualsPermutationItems] 投注注數不符：傳入注數{}, 計算注數：{}"),
+
+	BET_COUNTS_EQUALS_SUM_ITEMS("betCountsEqualsSumItems", "[betCountsEqualsSumItems] 投注注數不符：{}:{}"),
+
+	BET_COUNTER_NOT_PROCESSED("totalAmountValid", "請先執行betCounts* 相關驗證。"),
+
+	BET_COUNTER_PROCESSED("betCounts", "已執行betCounts* 相關驗證，請確認流程。"),
+
+	TOTAL_AMOUNT("totalAmountValid", "[AmountEqualsBetCalculate]投注金额不对:{}:{}");
+
+	private final String rule;
+
+	private final String pattern;
+
+	/** 預先建立、不含stack trace的例外，首次使用時才建立 */
+	private volatile SampleException exception;
+
+	private ValidateError(String rule, String pattern) {
+		this.rule = rule;
+		this.pattern = pattern;
+	}
+
+	/** 規則名稱，同 {@link ValidateChain} 的方法名稱 */
+	public String getRule() {
+		return rule;
+	}
+
+	/** 訊息格式 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	public String format(Object... args) {
+		return MessageFormatter.arrayFormat(pattern, args).getMessage();
+	}
+
+	/**
+	 * 預先建立的共用例外，不含stack trace，訊息為未帶入參數的 {@link #getPattern()}，
+	 * 適合大量驗證失敗時仍需以例外處理的呼叫端。
+	 */
+	public SampleException getException() {
+		SampleException result = exception;
+		if (result == null) {
+			result = exception = SampleException.stackless(pattern);
+		}
+		return result;
+	}
+
+	/** 帶入參數的例外 */
+	SampleException exception(Object... args) {
+		return new SampleException(this.format(args));
+	}
+
+}
@@ -0,0 +1,800 @@
+package pers.arjay.structure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.util.StringUtils;
+
+import pers.arjay.Separators;
+import pers.arjay.exception.SampleException;
+import pers.arjay.model.Slip;
+import pers.arjay.utils.CombinUtil;
+
+/**
+ * <pre>
+ * 預先編譯的投注項驗證計畫。
+ *
+ * {@link ValidateChain} 每張投注單都會重新切割、取代並逐條規則走訪投注項；
+ * ValidatePlan 則是將分隔符號與規則只宣告一次，編譯成不可變、thread-safe 的物件，
+ * 之後對每張投注單呼叫 {@link #validate(Slip)} 即可。
+ *
+ * 規則名稱與 {@link ValidateChain} 相同，執行順序如下：
+ *
+ * 1. 投注單層級規則 (betHasText、isSingleNote、betLengthXXXX、betNotRepeat)，依宣告順序
+ * 2. 投注項層級規則 (betXXXX、itemXXXX)，所有規則於同一趟迴圈內執行
+ * 3. betCounts* 注數驗證
+ * 4. totalAmountValid 金額驗證
+ *
+ * 切割使用 {@link BetTokenizer}，投注項與細項皆以位置記錄，不產生子字串。
+ * 各遊戲的規則也可由設定檔宣告，見 {@link ValidatePlanRegistry}。
+ *
+ * 範例：
+ *
+ * private static final ValidatePlan plan = ValidatePlan.builder(Separators.comma)
+ * 		.betLengthBetween(1, 5)
+ * 		.itemIsNumber()
+ * 		.itemNotRepeat()
+ * 		.betCountsEqualsPermutationItems()
+ * 		.totalAmountValid()
+ * 		.build();
+ *
+ * plan.validate(slip);
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+public final class ValidatePlan {
+
+	private final String betSeparator;
+
+	private final String itemSeparator;
+
+	private static final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+
+	private final BetTokenizer betTokenizer;
+
+	private final BetTokenizer itemTokenizer;
+
+	/** 空字串時為null，不做取代 */
+	private final Pattern replacePattern;
+
+	private final SlipRule[] slipRules;
+
+	private final BetRule[] betRules;
+
+	private final Counting counting;
+
+	private final int combinLength;
+
+	private final boolean amountValid;
+
+	private final int unit;
+
+	/** 投注項規則或注數計算需要細項時才切割細項 */
+	private final boolean itemsRequired;
+
+	private ValidatePlan(Builder builder) {
+		this.betSeparator = builder.betSeparator;
+		this.itemSeparator = builder.itemSeparator;
+		this.betTokenizer = BetTokenizer.of(builder.betSeparator);
+		this.itemTokenizer = BetTokenizer.of(builder.itemSeparator);
+		this.replacePattern = StringUtils.isEmpty(builder.replace) ? null : Pattern.compile(builder.replace);
+		this.slipRules = builder.slipRules.toArray(new SlipRule[0]);
+		this.betRules = builder.betRules.toArray(new BetRule[0]);
+		this.counting = builder.counting;
+		this.combinLength = builder.combinLength;
+		this.amountValid = builder.amountValid;
+		this.unit = builder.unit;
+		this.itemsRequired = builder.itemsRequired || counting == Counting.PERMUTATION
+				|| counting == Counting.SUM_ITEMS;
+	}
+
+	/**
+	 * 無號切割，且不需拆細單，同 {@link ValidateChain#ValidateChain(Slip)}
+	 */
+	public static Builder builder() {
+		return new Builder(Separators.unsign, Separators.unsign, "");
+	}
+
+	/**
+	 * 同 {@link ValidateChain#ValidateChain(Slip, String)}
+	 *
+	 * @param betSeparator
+	 *            split的regex參數
+	 */
+	public static Builder builder(String betSeparator) {
+		return new Builder(betSeparator, Separators.unsign, "");
+	}
+
+	/**
+	 * 同 {@link ValidateChain#ValidateChain(Slip, String, String, String)}
+	 *
+	 * @param betSeparator
+	 *            split的regex參數
+	 * @param itemSeparator
+	 *            拆單的regex參數
+	 * @param replace
+	 *            預設取代的文字
+	 */
+	public static Builder builder(String betSeparator, String itemSeparator, String replace) {
+		return new Builder(betSeparator, itemSeparator, replace);
+	}
+
+	/**
+	 * 驗證投注單，驗證失敗時拋出 {@link SampleException}
+	 *
+	 * @param slip
+	 *            投注單
+	 */
+	public void validate(Slip slip) {
+		final Context context = contexts.get().reset(slip);
+		try {
+			if (this.validate(context) != null) {
+				throw context.error.exception(context.args);
+			}
+		} finally {
+			context.clear();
+		}
+	}
+
+	/**
+	 * 驗證投注單，不拋出例外
+	 *
+	 * @param index
+	 *            投注單於批次中的位置
+	 * @param slip
+	 *            投注單
+	 * @return 驗證結果，失敗時包含錯誤代碼及參數，錯誤訊息於讀取時才產生
+	 */
+	public ValidateResult check(int index, Slip slip) {
+		final Context context = contexts.get().reset(slip);
+		try {
+			if (this.validate(context) == null) {
+				return ValidateResult.valid(index);
+			}
+			return ValidateResult.invalid(index, context.error, context.args);
+		} finally {
+			context.clear();
+		}
+	}
+
+	/**
+	 * @return 第一個驗證失敗的錯誤代碼，通過時為null
+	 */
+	private ValidateError validate(Context context) {
+		this.tokenize(context);
+
+		final Slip slip = context.slip;
+		final BetTokens bets = context.bets;
+		final BetTokens items = context.items;
+
+		for (SlipRule rule : slipRules) {
+			if (rule.check(context) != null) {
+				return context.error;
+			}
+		}
+
+		long betCounter = 0;
+		final int[][] positions = counting == Counting.PERMUTATION ? new int[bets.size()][] : null;
+
+		for (int i = 0; i < bets.size(); i++) {
+			if (itemsRequired) {
+				itemTokenizer.tokenize(bets.getSource(), bets.start(i), bets.end(i), items);
+			}
+
+			for (BetRule rule : betRules) {
+				if (rule.check(context, i) != null) {
+					return context.error;
+				}
+			}
+
+			if (counting == Counting.SUM_ITEMS && bets.hasText(i)) {
+				betCounter += items.size();
+			} else if (positions != null) {
+				positions[i] = new int[items.size()];
+				for (int j = 0; j < items.size(); j++) {
+					positions[i][j] = context.itemId(j);
+				}
+			}
+		}
+
+		switch (counting) {
+		case BETS:
+			betCounter = bets.size();
+			if (slip.getBetCounts() != betCounter) {
+				return context.fail(ValidateError.BET_COUNTS_EQUALS_BETS, slip.getBetCounts(), bets.size());
+			}
+			break;
+		case COMBIN:
+			/* 組合數超出long範圍時無法計算 (UNCOUNTABLE)，與任何投注注數皆不符 */
+			try {
+				betCounter = CombinUtil.combination(bets.size(), combinLength);
+			} catch (ArithmeticException e) {
+				betCounter = PermutationCounter.UNCOUNTABLE;
+			}
+			if (betCounter == PermutationCounter.UNCOUNTABLE || slip.getBetCounts() != betCounter) {
+				return context.fail(ValidateError.BET_COUNTS_EQUALS_COMBIN_BETS, slip.getBetCounts(),
+						betCounter);
+			}
+			break;
+		case PERMUTATION:
+			/* 與 BetTree.count 相同，只有一個位置時注數為0 */
+			betCounter = positions.length < 2 ? 0 : PermutationCounter.count(positions);
+			/* 無法計算的注數 (UNCOUNTABLE) 與任何投注注數皆不符 */
+			if (betCounter == PermutationCounter.UNCOUNTABLE || slip.getBetCounts() != betCounter) {
+				return context.fail(ValidateError.BET_COUNTS_EQUALS_PERMUTATION_ITEMS,
+						slip.getBetCounts(), betCounter);
+			}
+			break;
+		case SUM_ITEMS:
+			if (slip.getBetCounts() != betCounter) {
+				return context.fail(ValidateError.BET_COUNTS_EQUALS_SUM_ITEMS, slip.getBetCounts(), betCounter);
+			}
+			break;
+		default:
+			break;
+		}
+
+		if (amountValid) {
+			if (betCounter == 0) {
+				return context.fail(ValidateError.BET_COUNTER_NOT_PROCESSED);
+			}
+
+			final long amount = betCounter * slip.getMultiple() * unit
+					* (ValidateChain.SalesUnit.valueOf(slip.getSalesUnit()) == ValidateChain.SalesUnit.Yuan ? 10000L
+							: 1000L);
+			if (slip.getBetAmount() != amount) {
+				return context.fail(ValidateError.TOTAL_AMOUNT, slip.getBetAmount(), amount);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 切割投注項，有取代設定時只有實際被取代的投注單才會重建字串
+	 */
+	private void tokenize(Context context) {
+		final BetTokens bets = context.bets;
+		betTokenizer.tokenize(context.betDetail, bets);
+
+		if (replacePattern == null) {
+			return;
+		}
+
+		final Matcher matcher = replacePattern.matcher(context.betDetail);
+		boolean found = false;
+		for (int i = 0; i < bets.size() && !found; i++) {
+			found = matcher.region(bets.start(i), bets.end(i)).find();
+		}
+		if (!found) {
+			return;
+		}
+
+		/* 如果一開始先取代資料後，切割出來的投注項會有問題，因此逐項取代並重新記錄位置 */
+		final BetTokens replaced = context.replaced;
+		final StringBuilder builder = new StringBuilder(context.betDetail.length());
+		replaced.reset(builder);
+		for (int i = 0; i < bets.size(); i++) {
+			final int start = builder.length();
+			int position = bets.start(i);
+			matcher.region(bets.start(i), bets.end(i));
+			while (matcher.find()) {
+				builder.append(context.betDetail, position, matcher.start());
+				position = matcher.end();
+			}
+			builder.append(context.betDetail, position, bets.end(i));
+			replaced.add(start, builder.length());
+		}
+
+		context.bets = replaced;
+		context.replaced = bets;
+	}
+
+	public String getBetSeparator() {
+		return betSeparator;
+	}
+
+	public String getItemSeparator() {
+		return itemSeparator;
+	}
+
+	/** 注數計算方式 */
+	private enum Counting {
+		NONE, BETS, COMBIN, PERMUTATION, SUM_ITEMS
+	}
+
+	/** 單張投注單驗證時的狀態，每個執行緒重複使用 */
+	private static final class Context {
+
+		private Slip slip;
+
+		private String betDetail;
+
+		/** 第一個驗證失敗的錯誤代碼及參數 */
+		private ValidateError error;
+
+		private Object[] args;
+
+		private BetTokens bets = new BetTokens();
+
+		private BetTokens replaced = new BetTokens();
+
+		/** 目前投注項的細項 */
+		private final BetTokens items = new BetTokens();
+
+		/** 非純數字細項的代碼 */
+		private Map<String, Integer> itemIds;
+
+		private Context reset(Slip slip) {
+			this.slip = slip;
+			this.betDetail = slip.getBetDetail();
+			return this;
+		}
+
+		private void clear() {
+			this.slip = null;
+			this.betDetail = null;
+			this.error = null;
+			this.args = null;
+			this.itemIds = null;
+			this.bets.reset("");
+			this.replaced.reset("");
+			this.items.reset("");
+		}
+
+		private ValidateError fail(ValidateError error, Object... args) {
+			this.error = error;
+			this.args = args;
+			return error;
+		}
+
+		/** 目前投注項第 index 個細項的代碼，純數字以 {@link BetTokens#digitKey(int)} 表示，其餘以負數編號 */
+		private int itemId(int index) {
+			final int key = items.digitKey(index);
+			if (key >= 0) {
+				return key;
+			}
+
+			if (itemIds == null) {
+				itemIds = new HashMap<>();
+			}
+			final String item = items.toString(index);
+			Integer id = itemIds.get(item);
+			if (id == null) {
+				id = -(itemIds.size() + 1);
+				itemIds.put(item, id);
+			}
+			return id;
+		}
+
+	}
+
+	/** 投注單層級規則，回傳錯誤代碼，通過時為null */
+	@FunctionalInterface
+	private interface SlipRule {
+		ValidateError check(Context context);
+	}
+
+	/** 投注項層級規則，回傳錯誤代碼，通過時為null。context.items 僅於需要細項時才有值 */
+	@FunctionalInterface
+	private interface BetRule {
+		ValidateError check(Context context, int index);
+	}
+
+	/**
+	 * 規則宣告，方法名稱與 {@link ValidateChain} 相同。
+	 */
+	public static final class Builder {
+
+		private final String betSeparator;
+
+		private final String itemSeparator;
+
+		private final String replace;
+
+		private final List<SlipRule> slipRules = new ArrayList<>();
+
+		private final List<BetRule> betRules = new ArrayList<>();
+
+		private Counting counting = Counting.NONE;
+
+		private int combinLength;
+
+		private boolean amountValid;
+
+		private int unit = 1;
+
+		private boolean itemsRequired;
+
+		private Builder(String betSeparator, String itemSeparator, String replace) {
+			this.betSeparator = betSeparator;
+			this.itemSeparator = itemSeparator;
+			this.replace = replace;
+		}
+
+		/** 投注內容不得為空 */
+		public Builder betHasText() {
+			this.addSlipRule(context -> {
+				if (!StringUtils.hasText(context.betDetail)) {
+					return context.fail(ValidateError.BET_HAS_TEXT);
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/** 投注項目不得為復式 */
+		public Builder isSingleNote() {
+			this.addSlipRule(context -> {
+				if (isCompound(context.betDetail)) {
+					return context.fail(ValidateError.SINGLE_NOTE);
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 透過分割運算後，投注內容需介於於驗證長度
+		 *
+		 * @param min
+		 *            最小長度
+		 * @param max
+		 *            最大長度
+		 */
+		public Builder betLengthBetween(int min, int max) {
+			this.addSlipRule(context -> {
+				if (context.bets.size() < min || context.bets.size() > max) {
+					return context.fail(ValidateError.BET_LENGTH_BETWEEN, min, max, context.bets.size());
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 投注內容需為驗證長度
+		 *
+		 * @param length
+		 *            驗證長度
+		 */
+		public Builder betLengthEquals(int length) {
+			this.addSlipRule(context -> {
+				if (context.bets.size() != length) {
+					return context.fail(ValidateError.BET_LENGTH_EQUALS, length, context.bets.size());
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 投注內容需大於驗證長度
+		 *
+		 * @param length
+		 *            驗證長度
+		 */
+		public Builder betLengthGreatEqualsThen(int length) {
+			this.addSlipRule(context -> {
+				if (context.bets.size() < length) {
+					return context.fail(ValidateError.BET_LENGTH_GREAT_EQUALS, length, context.bets.size());
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 投注內容需小於驗證長度
+		 *
+		 * @param length
+		 *            驗證長度
+		 */
+		public Builder betLengthLessEqualsThen(int length) {
+			this.addSlipRule(context -> {
+				if (context.bets.size() > length) {
+					return context.fail(ValidateError.BET_LENGTH_LESS_EQUALS, length, context.bets.size());
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 投注內容存在於傳入集合內
+		 *
+		 * @param values
+		 *            驗證集合
+		 */
+		public Builder betIn(final Collection<String> values) {
+			return this.betIn(BetDomain.of(values));
+		}
+
+		/**
+		 * 投注內容存在於傳入集合內
+		 *
+		 * @param domain
+		 *            驗證集合
+		 */
+		public Builder betIn(final BetDomain domain) {
+			this.addBetRule((context, index) -> {
+				if (!domain.contains(context.bets, index)) {
+					return context.fail(ValidateError.BET_IN, context.bets.toString(index));
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 投注號碼於區間內
+		 *
+		 * @param min
+		 *            最小值
+		 * @param max
+		 *            最大值
+		 */
+		public Builder betNumberBetween(final int min, final int max) {
+			this.addBetRule((context, index) -> {
+				final long betNumber = context.bets.parseNumber(index);
+				if (betNumber == BetTokens.NOT_A_NUMBER) {
+					return context.fail(ValidateError.BET_NOT_NUMBER, context.bets.toString(index),
+							betSeparator);
+				}
+				if (betNumber < min || betNumber > max) {
+					return context.fail(ValidateError.BET_NUMBER_BETWEEN, min, max, context.bets.toString(index));
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/** 投注內容須為數值 */
+		public Builder betIsNumber() {
+			this.addBetRule((context, index) -> {
+				if (!context.bets.isDigits(index)) {
+					return context.fail(ValidateError.BET_IS_NUMBER, context.betDetail, betSeparator);
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/** 投注內容不得重複 */
+		public Builder betNotRepeat() {
+			this.addSlipRule(context -> {
+				if (!context.bets.isDistinct()) {
+					return context.fail(ValidateError.BET_NOT_REPEAT, context.betDetail);
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/** 透過分割運算後，細項須為數值 */
+		public Builder itemIsNumber() {
+			itemsRequired = true;
+			this.addBetRule((context, index) -> {
+				final BetTokens items = context.items;
+				for (int i = 0; i < items.size(); i++) {
+					if (items.hasText(i) && !items.isDigits(i)) {
+						return context.fail(ValidateError.ITEM_IS_NUMBER, items.toString(i));
+					}
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 細項號碼於區間內
+		 *
+		 * @param min
+		 *            最小值
+		 * @param max
+		 *            最大值
+		 */
+		public Builder itemNumberBetween(final int min, final int max) {
+			itemsRequired = true;
+			this.addBetRule((context, index) -> {
+				final BetTokens items = context.items;
+				for (int i = 0; i < items.size(); i++) {
+					if (!items.hasText(i)) {
+						continue;
+					}
+
+					final long betNumber = items.parseNumber(i);
+					if (betNumber == BetTokens.NOT_A_NUMBER) {
+						return context.fail(ValidateError.ITEM_NOT_NUMBER,
+								items.toString(i), betSeparator, itemSeparator);
+					}
+					if (betNumber < min || betNumber > max) {
+						return context.fail(ValidateError.ITEM_NUMBER_BETWEEN, min, max, items.toString(i));
+					}
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 透過分割運算後，細項內容需介於於驗證長度
+		 *
+		 * @param min
+		 *            最小長度
+		 * @param max
+		 *            最大長度
+		 */
+		public Builder itemLengthBetween(int min, int max) {
+			itemsRequired = true;
+			this.addBetRule((context, index) -> {
+				if (context.items.size() < min || context.items.size() > max) {
+					return context.fail(ValidateError.ITEM_LENGTH_BETWEEN, min, max, context.bets.length(index));
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 透過分割運算後，細項內容需等於驗證長度
+		 *
+		 * @param length
+		 *            驗證長度
+		 */
+		public Builder itemLengthEquals(int length) {
+			itemsRequired = true;
+			this.addBetRule((context, index) -> {
+				if (context.items.size() != length) {
+					return context.fail(ValidateError.ITEM_LENGTH_EQUALS, length, context.bets.toString(index));
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 細項內容需大於驗證長度
+		 *
+		 * @param length
+		 *            驗證長度
+		 */
+		public Builder itemLengthGreatEqualsThen(int length) {
+			itemsRequired = true;
+			this.addBetRule((context, index) -> {
+				if (context.items.size() < length) {
+					return context.fail(ValidateError.ITEM_LENGTH_GREAT_EQUALS, length, context.bets.length(index));
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/**
+		 * 透過分割運算後，細項內容需小於驗證長度
+		 *
+		 * @param length
+		 *            驗證長度
+		 */
+		public Builder itemLengthLessEqualsThen(int length) {
+			itemsRequired = true;
+			this.addBetRule((context, index) -> {
+				if (context.items.size() > length) {
+					return context.fail(ValidateError.ITEM_LENGTH_LESS_EQUALS, length, context.bets.length(index));
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/** 細項內容不得為空值 */
+		public Builder itemNotBlank() {
+			this.addBetRule((context, index) -> {
+				if (!context.bets.hasText(index)) {
+					return context.fail(ValidateError.ITEM_NOT_BLANK);
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/** 透過分割運算後，細項不得重複 */
+		public Builder itemNotRepeat() {
+			itemsRequired = true;
+			this.addBetRule((context, index) -> {
+				if (!context.items.isDistinct()) {
+					return context.fail(ValidateError.ITEM_NOT_REPEAT, context.bets.toString(index));
+				}
+				return null;
+			});
+			return this;
+		}
+
+		/** 投注注數等於計算注數 */
+		public Builder betCountsEqualsBets() {
+			return this.counting(Counting.BETS);
+		}
+
+		/**
+		 * 投注注數等於排列組合數(Cn取m)
+		 *
+		 * @param betLength
+		 *            需投注長度 (m值)
+		 */
+		public Builder betCountsEqualsCombinBets(int betLength) {
+			this.combinLength = betLength;
+			return this.counting(Counting.COMBIN);
+		}
+
+		/** 投注注數等於排列組合後注數 (不重複)，見 {@link ValidateChain#betCountsEqualsPermutationItems()} */
+		public Builder betCountsEqualsPermutationItems() {
+			return this.counting(Counting.PERMUTATION);
+		}
+
+		/** 透過分割運算後，投注注數等於細項注數 */
+		public Builder betCountsEqualsSumItems() {
+			return this.counting(Counting.SUM_ITEMS);
+		}
+
+		/** 需先宣告betCounts* 相關驗證。 */
+		public Builder totalAmountValid() {
+			if (counting == Counting.NONE) {
+				throw ValidateError.BET_COUNTER_NOT_PROCESSED.exception();
+			}
+			this.amountValid = true;
+			return this;
+		}
+
+		/**
+		 * 設定單位，預設為1，如有特別需求如：快三系列，單位為2。
+		 *
+		 * @param unit
+		 *            每注單位價格
+		 */
+		public Builder setUnit(int unit) {
+			this.unit = unit;
+			return this;
+		}
+
+		public ValidatePlan build() {
+			return new ValidatePlan(this);
+		}
+
+		private void addSlipRule(SlipRule rule) {
+			slipRules.add(rule);
+		}
+
+		private void addBetRule(BetRule rule) {
+			betRules.add(rule);
+		}
+
+		private Builder counting(Counting counting) {
+			if (this.counting != Counting.NONE) {
+				throw ValidateError.BET_COUNTER_PROCESSED.exception();
+			}
+			this.counting = counting;
+			return this;
+		}
+
+	}
+
+	/** 等同 betDetail.split(Separators.comma).length &gt; 1 */
+	static boolean isCompound(String betDetail) {
+		final int comma = betDetail.indexOf(',');
+		if (comma < 0) {
+			return false;
+		}
+		for (int i = comma + 1; i < betDetail.length(); i++) {
+			if (betDetail.charAt(i) != ',') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,448 @@
+package pers.arjay.structure;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+import pers.arjay.Separators;
+import pers.arjay.exception.SampleException;
+import pers.arjay.model.Slip;
+
+/**
+ * <pre>
+ * 以設定檔宣告各遊戲的驗證規則，編譯為 {@link ValidatePlan} 快取，設定檔異動時整批替換。
+ *
+ * 設定檔為 properties 格式 (UTF-8)，key 為「遊戲代碼.屬性」：
+ *
+ * ssc.direct.betSeparator=comma
+ * ssc.direct.itemSeparator=unsign
+ * ssc.direct.replace=-
+ * ssc.direct.unit=1
+ * ssc.direct.rules=betLengthEquals(5); itemIsNumber; itemNotRepeat; betCountsEqualsPermutationItems; totalAmountValid
+ *
+ * 11x5.any5.betSeparator=comma
+ * 11x5.any5.rules=betLengthBetween(5, 11); betInRange(1, 11, 2); betNotRepeat; betCountsEqualsCombinBets(5); totalAmountValid
+ *
+ * betSeparator、itemSeparator 可使用 {@link Separators} 的名稱 (unsign、multiple、comma、space、hyphen)，
+ * 其餘視為split的regex，注意properties中的反斜線需寫成兩個，如 \\|。
+ * 未設定時 betSeparator、itemSeparator 為 unsign，replace 為空字串，unit 為1。
+ *
+ * rules 以分號分隔，名稱同 {@link ValidatePlan.Builder}，參數寫在括號內，另外：
+ *
+ * betIn(01, 02, 03)：同 {@link ValidatePlan.Builder#betIn(BetDomain)}
+ * betInRange(1, 11, 2)：同 {@link BetDomain#range(int, int, int)}
+ *
+ * 範例：
+ *
+ * ValidatePlanRegistry registry = ValidatePlanRegistry.load(Paths.get("/config/validate.properties")).watch();
+ *
+ * registry.validate("ssc.direct", slip);
+ *
+ * 重新載入時先完整編譯新的設定，全部成功才替換，失敗則記錄錯誤並保留原本的規則；
+ * 驗證中的投注單仍使用替換前取得的 {@link ValidatePlan}。
+ * 新舊 {@link ValidatePlan} 共用相同的規則類別，替換後不需重新JIT。
+ * </pre>
+ *
+ * @author jay.kuo
+ */
+@Slf4j
+public final class ValidatePlanRegistry implements Closeable {
+
+	/** 設定檔異動後需靜止多久才重新載入，避免讀到寫入一半的檔案 */
+	private static final long quietMillis = 300;
+
+	private static final Set<String> attributes = new TreeSet<>(
+			Arrays.asList("betSeparator", "itemSeparator", "replace", "unit", "rules"));
+
+	private final Path file;
+
+	/** 整批替換，不會修改內容 */
+	private volatile Map<String, ValidatePlan> plans;
+
+	private volatile long lastModified;
+
+	private volatile Thread watcher;
+
+	private volatile WatchService watchService;
+
+	private ValidatePlanRegistry(Path file) {
+		this.file = file.toAbsolutePath();
+	}
+
+	/**
+	 * 載入並編譯設定檔
+	 *
+	 * @throws IllegalArgumentException
+	 *             設定內容錯誤或為空
+	 * @throws IOException
+	 *             讀取失敗
+	 */
+	public static ValidatePlanRegistry load(Path file) throws IOException {
+		final ValidatePlanRegistry registry = new ValidatePlanRegistry(file);
+		registry.lastModified = Files.getLastModifiedTime(registry.file).toMillis();
+		registry.plans = compile(read(registry.file));
+		return registry;
+	}
+
+	/**
+	 * 編譯設定，key 為遊戲代碼
+	 *
+	 * @throws IllegalArgumentException
+	 *             設定內容錯誤
+	 */
+	public static Map<String, ValidatePlan> compile(Properties properties) {
+		final Map<String, Map<String, String>> games = new HashMap<>();
+		for (String key : properties.stringPropertyNames()) {
+			final int dot = key.lastIndexOf('.');
+			if (dot <= 0 || !attributes.contains(key.substring(dot + 1))) {
+				throw new IllegalArgumentException("unknown validate config: " + key);
+			}
+			games.computeIfAbsent(key.substring(0, dot), game -> new HashMap<>()).put(key.substring(dot + 1),
+					properties.getProperty(key).trim());
+		}
+
+		final Map<String, ValidatePlan> plans = new HashMap<>();
+		for (Map.Entry<String, Map<String, String>> game : games.entrySet()) {
+			try {
+				plans.put(game.getKey(), compile(game.getValue()));
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("[" + game.getKey() + "] " + e.getMessage(), e);
+			}
+		}
+		return Collections.unmodifiableMap(plans);
+	}
+
+	/**
+	 * @throws SampleException
+	 *             未設定該遊戲
+	 */
+	public ValidatePlan get(String game) {
+		final ValidatePlan plan = plans.get(game);
+		if (plan == null) {
+			throw new SampleException("未設定驗證規則：{}", game);
+		}
+		return plan;
+	}
+
+	public boolean contains(String game) {
+		return plans.containsKey(game);
+	}
+
+	/** 目前所有規則，重新載入後不會隨之變動 */
+	public Map<String, ValidatePlan> getPlans() {
+		return plans;
+	}
+
+	/**
+	 * 同 {@link ValidatePlan#validate(Slip)}
+	 */
+	public void validate(String game, Slip slip) {
+		this.get(game).validate(slip);
+	}
+
+	/**
+	 * 同 {@link ValidatePlan#check(int, Slip)}
+	 */
+	public ValidateResult check(String game, int index, Slip slip) {
+		return this.get(game).check(index, slip);
+	}
+
+	/**
+	 * 重新載入設定檔，編譯失敗時保留原本的規則
+	 *
+	 * @return 是否替換成功
+	 */
+	public synchronized boolean reload() {
+		try {
+			final long modified = Files.getLastModifiedTime(file).toMillis();
+			final Map<String, ValidatePlan> compiled = compile(read(file));
+			this.plans = compiled;
+			this.lastModified = modified;
+			log.info("validate config reloaded: {}, games: {}", file, compiled.keySet());
+			return true;
+		} catch (IOException | RuntimeException e) {
+			log.error("validate config reload failed, keep previous rules: {}", file, e);
+			return false;
+		}
+	}
+
+	/**
+	 * 設定檔修改時間異動時才重新載入，可由排程定期呼叫
+	 *
+	 * @return 是否重新載入並替換成功
+	 */
+	public boolean reloadIfModified() {
+		try {
+			if (Files.getLastModifiedTime(file).toMillis() == lastModified) {
+				return false;
+			}
+		} catch (IOException e) {
+			log.error("validate config not readable: {}", file, e);
+			return false;
+		}
+		return this.reload();
+	}
+
+	/**
+	 * 以 {@link WatchService} 監看設定檔，異動時自動重新載入，監看執行緒為daemon
+	 */
+	public synchronized ValidatePlanRegistry watch() throws IOException {
+		if (watcher != null) {
+			return this;
+		}
+
+		final WatchService service = FileSystems.getDefault().newWatchService();
+		file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+
+		final Thread thread = new Thread(() -> this.watchLoop(service), "validate-config-watcher");
+		thread.setDaemon(true);
+		this.watchService = service;
+		this.watcher = thread;
+		thread.start();
+		return this;
+	}
+
+	/** 停止監看 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (watchService != null) {
+			watchService.close();
+			watchService = null;
+			watcher = null;
+		}
+	}
+
+	private void watchLoop(WatchService service) {
+		final Path name = file.getFileName();
+		try {
+			while (true) {
+				boolean changed = this.changed(service.take(), name);
+				if (!changed) {
+					continue;
+				}
+
+				/* 等到不再有異動事件 */
+				WatchKey key;
+				while ((key = service.poll(quietMillis, TimeUnit.MILLISECONDS)) != null) {
+					this.changed(key, name);
+				}
+				this.reload();
+			}
+		} catch (ClosedWatchServiceException e) {
+			log.debug("validate config watcher closed: {}", file);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean changed(WatchKey key, Path name) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			changed |= name.equals(event.context());
+		}
+		key.reset();
+		return changed;
+	}
+
+	/**
+	 * 讀取設定檔，載入與重新載入皆不接受空的設定
+	 *
+	 * @throws IllegalArgumentException
+	 *             設定檔為空
+	 */
+	private static Properties read(Path file) throws IOException {
+		final Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		if (properties.isEmpty()) {
+			throw new IllegalArgumentException("validate config is empty: " + file);
+		}
+		return properties;
+	}
+
+	private static ValidatePlan compile(Map<String, String> game) {
+		final ValidatePlan.Builder builder = ValidatePlan.builder(
+				separator(game.getOrDefault("betSeparator", "")),
+				separator(game.getOrDefault("itemSeparator", "")),
+				game.getOrDefault("replace", ""));
+
+		if (StringUtils.hasText(game.get("unit"))) {
+			builder.setUnit(Integer.parseInt(game.get("unit")));
+		}
+
+		for (String rule : StringUtils.tokenizeToStringArray(game.getOrDefault("rules", ""), ";")) {
+			rule(builder, rule);
+		}
+		return builder.build();
+	}
+
+	private static String separator(String value) {
+		switch (value) {
+		case "":
+		case "unsign":
+			return Separators.unsign;
+		case "multiple":
+			return Separators.multiple;
+		case "comma":
+			return Separators.comma;
+		case "space":
+			return Separators.space;
+		case "hyphen":
+			return Separators.hyphen;
+		default:
+			return value;
+		}
+	}
+
+	private static void rule(ValidatePlan.Builder builder, String rule) {
+		final int open = rule.indexOf('(');
+		final String name;
+		final String[] args;
+		if (open < 0) {
+			name = rule;
+			args = new String[0];
+		} else {
+			if (!rule.endsWith(")")) {
+				throw new IllegalArgumentException("rule format error: " + rule);
+			}
+			name = rule.substring(0, open).trim();
+			args = StringUtils.tokenizeToStringArray(rule.substring(open + 1, rule.length() - 1), ",");
+		}
+
+		switch (name) {
+		case "betHasText":
+			arguments(rule, args, 0);
+			builder.betHasText();
+			break;
+		case "isSingleNote":
+			arguments(rule, args, 0);
+			builder.isSingleNote();
+			break;
+		case "betLengthBetween":
+			arguments(rule, args, 2);
+			builder.betLengthBetween(number(args[0]), number(args[1]));
+			break;
+		case "betLengthEquals":
+			arguments(rule, args, 1);
+			builder.betLengthEquals(number(args[0]));
+			break;
+		case "betLengthGreatEqualsThen":
+			arguments(rule, args, 1);
+			builder.betLengthGreatEqualsThen(number(args[0]));
+			break;
+		case "betLengthLessEqualsThen":
+			arguments(rule, args, 1);
+			builder.betLengthLessEqualsThen(number(args[0]));
+			break;
+		case "betIn":
+			if (args.length == 0) {
+				throw new IllegalArgumentException("rule requires values: " + rule);
+			}
+			builder.betIn(BetDomain.of(args));
+			break;
+		case "betInRange":
+			arguments(rule, args, 3);
+			builder.betIn(BetDomain.range(number(args[0]), number(args[1]), number(args[2])));
+			break;
+		case "betNumberBetween":
+			arguments(rule, args, 2);
+			builder.betNumberBetween(number(args[0]), number(args[1]));
+			break;
+		case "betIsNumber":
+			arguments(rule, args, 0);
+			builder.betIsNumber();
+			break;
+		case "betNotRepeat":
+			arguments(rule, args, 0);
+			builder.betNotRepeat();
+			break;
+		case "itemIsNumber":
+			arguments(rule, args, 0);
+			builder.itemIsNumber();
+			break;
+		case "itemNumberBetween":
+			arguments(rule, args, 2);
+			builder.itemNumberBetween(number(args[0]), number(args[1]));
+			break;
+		case "itemLengthBetween":
+			arguments(rule, args, 2);
+			builder.itemLengthBetween(number(args[0]), number(args[1]));
+			break;
+		case "itemLengthEquals":
+			arguments(rule, args, 1);
+			builder.itemLengthEquals(number(args[0]));
+			break;
+		case "itemLengthGreatEqualsThen":
+			arguments(rule, args, 1);
+			builder.itemLengthGreatEqualsThen(number(args[0]));
+			break;
+		case "itemLengthLessEqualsThen":
+			arguments(rule, args, 1);
+			builder.itemLengthLessEqualsThen(number(args[0]));
+			break;
+		case "itemNotBlank":
+			arguments(rule, args, 0);
+			builder.itemNotBlank();
+			break;
+		case "itemNotRepeat":
+			arguments(rule, args, 0);
+			builder.itemNotRepeat();
+			break;
+		case "betCountsEqualsBets":
+			arguments(rule, args, 0);
+			builder.betCountsEqualsBets();
+			break;
+		case "betCountsEqualsCombinBets":
+			arguments(rule, args, 1);
+			builder.betCountsEqualsCombinBets(number(args[0]));
+			break;
+		case "betCountsEqualsPermutationItems":
+			arguments(rule, args, 0);
+			builder.betCountsEqualsPermutationItems();
+			break;
+		case "betCountsEqualsSumItems":
+			arguments(rule, args, 0);
+			builder.betCountsEqualsSumItems();
+			break;
+		case "totalAmountValid":
+			arguments(rule, args, 0);
+			builder.totalAmountValid();
+			break;
+		default:
+			throw new IllegalArgumentException("unknown rule: " + rule);
+		}
+	}
+
+	private static void arguments(String rule, String[] args, int expected) {
+		if (args.length != expected) {
+			throw new IllegalArgumentException("rule requires " + expected + " arguments: " + rule);
+		}
+	}
+
+	private static int number(String value) {
+		return Integer.parseInt(value);
+	}
+
+}
@@ -0,0 +1,85 @@
+package pers.arjay.structure;
+
+import pers.arjay.exception.SampleException;
+
+/**
+ * 投注單驗證結果，驗證通過時 error 為null。
+ * 
+ * 失敗時只保存錯誤代碼與參數，錯誤訊息於 {@link #getMessage()} 時才產生。
+ * 
+ * @author jay.kuo
+ */
+public final class ValidateResult {
+
+	private static final Object[] noArgs = new Object[0];
+
+	private final int index;
+
+	private final ValidateError error;
+
+	private final Object[] args;
+
+	private String message;
+
+	private ValidateResult(int index, ValidateError error, Object[] args) {
+		this.index = index;
+		this.error = error;
+		this.args = args;
+	}
+
+	static ValidateResult valid(int index) {
+		return new ValidateResult(index, null, noArgs);
+	}
+
+	static ValidateResult invalid(int index, ValidateError error, Object[] args) {
+		return new ValidateResult(index, error, args == null ? noArgs : args);
+	}
+
+	/** 投注單於批次中的位置 */
+	public int getIndex() {
+		return index;
+	}
+
+	/** 錯誤代碼 */
+	public ValidateError getError() {
+		return error;
+	}
+
+	/** 驗證失敗的規則名稱，同 {@link ValidateChain} 的方法名稱 */
+	public String getRule() {
+		return error == null ? null : error.getRule();
+	}
+
+	/** 錯誤訊息參數 */
+	public Object[] getArgs() {
+		return args.clone();
+	}
+
+	/** 錯誤訊息，首次呼叫時才格式化 */
+	public String getMessage() {
+		if (error == null) {
+			return null;
+		}
+		if (message == null) {
+			message = error.format(args);
+		}
+		return message;
+	}
+
+	public boolean isValid() {
+		return error == null;
+	}
+
+	/**
+	 * 轉為不含stack trace的例外
+	 */
+	public SampleException toException() {
+		return SampleException.stackless(this.getMessage());
+	}
+
+	@Override
+	public String toString() {
+		return "ValidateResult(index=" + index + ", error=" + error + ", message=" + this.getMessage() + ")";
+	}
+
+}
@@ -1,7 +1,5 @@
 package pers.arjay.utils;
 
-import java.math.BigInteger;
-
 /**
  * @ClassName: CombinUtil
  * @Description: 投注数计算excel对应方法combin工具类
@@ -10,20 +8,31 @@ import java.math.BigInteger;
  * 
  */
 public class CombinUtil {
+
 	/**
-	 * @Title: cal
-	 * @Description: 阶乘计算
-	 * @param n
-	 * @return
+	 * 查表的列数，C(66,33)为long可容纳的最大组合数
 	 */
-	private static BigInteger cal(int n) {
-		if (n == 0) {
-			return BigInteger.valueOf(1);
-		}
-		if (n == 1) {
-			return BigInteger.valueOf(1);
-		} else {
-			return cal(n - 1).multiply(BigInteger.valueOf(n));
+	private static final int TABLE_ROWS = 67;
+
+	/**
+	 * @ClassName: PascalTable
+	 * @Description: 巴斯卡三角形，首次使用时才建立
+	 */
+	private static class PascalTable {
+
+		private static final long[][] rows = build();
+
+		private static long[][] build() {
+			long[][] rows = new long[TABLE_ROWS][];
+			for (int n = 0; n < TABLE_ROWS; n++) {
+				rows[n] = new long[n + 1];
+				rows[n][0] = 1;
+				rows[n][n] = 1;
+				for (int m = 1; m < n; m++) {
+					rows[n][m] = rows[n - 1][m - 1] + rows[n - 1][m];
+				}
+			}
+			return rows;
 		}
 	}
 
@@ -33,6 +42,8 @@ public class CombinUtil {
 	 * @param n
 	 * @param m
 	 * @return
+	 * @throws ArithmeticException
+	 *             结果超出int范围
 	 */
 	public static int combin(int n, int m) {
 		if (n == 0) {
@@ -41,6 +52,47 @@ public class CombinUtil {
 		if (n < m) {
 			return 0;
 		}
-		return cal(n).divide(cal(m)).divide(cal(n - m)).intValue();
+		return Math.toIntExact(combination(n, m));
+	}
+
+	/**
+	 * @Title: combination
+	 * @Description: 组合数C(n,m)，n小于67时直接查表，不产生任何物件
+	 * @param n
+	 * @param m
+	 * @return n为0、m小于0或大于n时为0，n为0时与combin相同
+	 * @throws IllegalArgumentException
+	 *             n小于0
+	 * @throws ArithmeticException
+	 *             结果超出long范围
+	 */
+	public static long combination(int n, int m) {
+		if (n < 0) {
+			throw new IllegalArgumentException("n must not be negative: " + n);
+		}
+		if (n == 0 || m < 0 || m > n) {
+			return 0;
+		}
+		if (n < TABLE_ROWS) {
+			return PascalTable.rows[n][m];
+		}
+
+		m = Math.min(m, n - m);
+		long result = 1;
+		for (int i = 1; i <= m; i++) {
+			/* result * (n - m + i) / i 必定整除，先约分避免中间值溢位 */
+			long gcd = gcd(result, i);
+			result = Math.multiplyExact(result / gcd, (n - m + i) / (i / gcd));
+		}
+		return result;
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
 	}
 }
@@ -0,0 +1,85 @@
+package pers.arjay.generator.otp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link HotpEngine} against the test vectors of RFC&nbsp;4226 and RFC&nbsp;6238, and against the JCE
+ * {@link javax.crypto.Mac} used by {@link HmacOneTimePasswordGenerator}.
+ */
+public class HotpEngineTest {
+
+    private static final String[] ALGORITHMS = {
+            TimeBasedOneTimePasswordGenerator.TOTP_ALGORITHM_HMAC_SHA1,
+            TimeBasedOneTimePasswordGenerator.TOTP_ALGORITHM_HMAC_SHA256,
+            TimeBasedOneTimePasswordGenerator.TOTP_ALGORITHM_HMAC_SHA512 };
+
+    /** RFC 6238, appendix B: the seed for each of {@link #ALGORITHMS}. */
+    private static final String[] TOTP_SEEDS = {
+            "12345678901234567890",
+            "12345678901234567890123456789012",
+            "1234567890123456789012345678901234567890123456789012345678901234" };
+
+    private static final long[] TOTP_TIMES = { 59L, 1111111109L, 1111111111L, 1234567890L, 2000000000L, 20000000000L };
+
+    /** RFC 6238, appendix B: the expected passwords for each of {@link #ALGORITHMS} at each of {@link #TOTP_TIMES}. */
+    private static final int[][] TOTP_PASSWORDS = {
+            { 94287082, 7081804, 14050471, 89005924, 69279037, 65353130 },
+            { 46119246, 68084774, 67062674, 91819424, 90698825, 77737706 },
+            { 90693936, 25091201, 99943326, 93441116, 38618901, 47863826 } };
+
+    @Test
+    public void rfc4226Vectors() throws Exception {
+        final int[] expected = { 755224, 287082, 359152, 969429, 338314, 254676, 287922, 162583, 399871, 520489 };
+        final HotpEngine engine = HotpEngine.of(HmacOneTimePasswordGenerator.HOTP_HMAC_ALGORITHM, 6,
+                "12345678901234567890".getBytes(StandardCharsets.US_ASCII));
+
+        for (int counter = 0; counter < expected.length; counter++) {
+            assertEquals("counter " + counter, expected[counter], engine.generateOneTimePassword(counter));
+        }
+    }
+
+    @Test
+    public void rfc6238Vectors() throws Exception {
+        for (int a = 0; a < ALGORITHMS.length; a++) {
+            final HotpEngine engine = HotpEngine.of(ALGORITHMS[a], 8, TOTP_SEEDS[a].getBytes(StandardCharsets.US_ASCII));
+
+            for (int t = 0; t < TOTP_TIMES.length; t++) {
+                assertEquals(ALGORITHMS[a] + " at " + TOTP_TIMES[t], TOTP_PASSWORDS[a][t],
+                        engine.generateOneTimePassword(TOTP_TIMES[t] / 30));
+            }
+        }
+    }
+
+    @Test
+    public void randomKeysMatchJce() throws Exception {
+        final Random random = new Random(4226);
+
+        for (final String algorithm : ALGORITHMS) {
+            for (int passwordLength = 6; passwordLength <= 8; passwordLength++) {
+                final TimeBasedOneTimePasswordGenerator jce =
+                        new TimeBasedOneTimePasswordGenerator(30, TimeUnit.SECONDS, passwordLength, algorithm);
+
+                // Key lengths span short keys, a full block, and keys longer than a block, which are hashed first.
+                for (int round = 0; round < 200; round++) {
+                    final byte[] secret = new byte[1 + random.nextInt(200)];
+                    random.nextBytes(secret);
+                    final long counter = round % 4 == 0 ? round : random.nextLong();
+
+                    final HotpEngine engine = HotpEngine.of(algorithm, passwordLength, secret);
+                    final int expected = jce.generateOneTimePassword(new SecretKeySpec(secret, algorithm), counter);
+
+                    assertEquals(algorithm + " key length " + secret.length + " counter " + counter,
+                            expected, engine.generateOneTimePassword(counter));
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
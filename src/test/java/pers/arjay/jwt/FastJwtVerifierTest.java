@@ -0,0 +1,89 @@
+package pers.arjay.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+
+import javax.crypto.Mac;
+
+import org.junit.Test;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+/**
+ * {@link FastJwtVerifier} 與 jjwt 取得的 sub 比對
+ *
+ * @author jay.kuo
+ */
+public class FastJwtVerifierTest {
+
+	private static final String HS512_HEADER = "eyJhbGciOiJIUzUxMiJ9";
+
+	private final Key key = JwtTokenUtil.signingKey(JwtTokenUtil.DEFAULT_SECRET);
+
+	private final FastJwtVerifier verifier = new FastJwtVerifier(key);
+
+	/** jjwt 簽發的令牌，sub 為各種型別的值 */
+	@Test
+	public void subjectOfAnyScalarTypeMatchesJjwt() {
+		final Object[] subjects = { "alice", "", "al\"ice\u00e9\u4e2d", 42, -7, 0, Long.MAX_VALUE,
+				new BigInteger("123456789012345678901234567890"), 1.5, -0.25, 1e100, true, false };
+		for (Object subject : subjects) {
+			final String token = Jwts.builder().claim(Claims.SUBJECT, subject).signWith(SignatureAlgorithm.HS512, key)
+					.compact();
+			assertSameSubject(token);
+		}
+	}
+
+	/** 自行組成的 payload，數值的寫法與 Java 序列化的結果不同 */
+	@Test
+	public void subjectOfRawJsonNumberMatchesJjwt() {
+		final String[] subjects = { "-0", "1E2", "1e-3", "2.50", "-1.0e+3", "9223372036854775808", "true", "null" };
+		for (String subject : subjects) {
+			assertSameSubject(sign("{\"sub\":" + subject + "}"));
+		}
+	}
+
+	/** 物件與陣列不比照 jjwt 的 toString，sub 為 null，但令牌仍有效 */
+	@Test
+	public void subjectOfObjectOrArrayIsNull() {
+		final Object[] subjects = { Collections.singletonMap("a", 1), Arrays.asList(1, "b") };
+		for (Object subject : subjects) {
+			final String token = Jwts.builder().claim(Claims.SUBJECT, subject).signWith(SignatureAlgorithm.HS512, key)
+					.compact();
+			assertNotNull(Jwts.parser().setSigningKey(key).parseClaimsJws(token).getBody().getSubject());
+			final FastJwtVerifier.Payload payload = verifier.verify(token);
+			assertNotNull(token, payload);
+			assertNull(token, payload.getSubject());
+		}
+	}
+
+	private void assertSameSubject(String token) {
+		final String expected = Jwts.parser().setSigningKey(key).parseClaimsJws(token).getBody().getSubject();
+		final FastJwtVerifier.Payload payload = verifier.verify(token);
+		assertNotNull(token, payload);
+		assertEquals(token, expected, payload.getSubject());
+	}
+
+	private String sign(String payload) {
+		final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		final String signed = HS512_HEADER + "." + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+		try {
+			final Mac mac = Mac.getInstance(SignatureAlgorithm.HS512.getJcaName());
+			mac.init(key);
+			return signed + "." + encoder.encodeToString(mac.doFinal(signed.getBytes(StandardCharsets.US_ASCII)));
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package pers.arjay.structure;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * {@link PermutationCounter} 與原本 {@link BetTree#count(int)} 的注數比對
+ *
+ * @author jay.kuo
+ */
+public class PermutationCounterTest {
+
+	private static final String VALUES = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+	@Test
+	public void sample() {
+		assertEquals(14, PermutationCounter.count(positions("123", "234", "345")));
+		assertEquals(2, PermutationCounter.count(positions("12", "12")));
+		assertEquals(6, PermutationCounter.count(positions("123", "123", "123")));
+	}
+
+	@Test
+	public void randomSlipsMatchBetTree() {
+		final Random random = new Random(20181018);
+		for (int round = 0; round < 3000; round++) {
+			final String[][] positions = randomPositions(random, 2 + random.nextInt(7), 1 + random.nextInt(6),
+					1 + random.nextInt(12));
+			assertEquals(Arrays.deepToString(positions), betTreeCount(positions), PermutationCounter.count(positions));
+		}
+	}
+
+	/** 位置數超過 MAX_POSITIONS 時改為逐位置計算，結果仍與 BetTree 相同 */
+	@Test
+	public void morePositionsThanSubsetLimitMatchBetTree() {
+		final Random random = new Random(42);
+		for (int round = 0; round < 40; round++) {
+			final int k = PermutationCounter.MAX_POSITIONS + 1 + random.nextInt(3);
+			final String[][] positions = randomPositions(random, k, 1 + random.nextInt(2), k + random.nextInt(8));
+			assertEquals(Arrays.deepToString(positions), betTreeCount(positions), PermutationCounter.count(positions));
+		}
+	}
+
+	/** 逐位置計算與子集合DP的結果相同 */
+	@Test
+	public void countByPositionMatchesSubsetCount() {
+		final Random random = new Random(7);
+		for (int round = 0; round < 2000; round++) {
+			final int v = 1 + random.nextInt(10);
+			final int[][] positions = new int[2 + random.nextInt(7)][];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = new int[1 + random.nextInt(6)];
+				for (int j = 0; j < positions[i].length; j++) {
+					positions[i][j] = random.nextInt(v);
+				}
+			}
+			final long expected = PermutationCounter.count(positions);
+			if (expected != 0) {
+				assertEquals(Arrays.deepToString(positions), expected, PermutationCounter.countByPosition(positions, v));
+			}
+		}
+	}
+
+	@Test
+	public void overflowIsUncountable() {
+		final String[] position = new String[30];
+		for (int i = 0; i < position.length; i++) {
+			position[i] = String.valueOf(VALUES.charAt(i));
+		}
+		final String[][] positions = new String[25][];
+		Arrays.fill(positions, position);
+		assertEquals(PermutationCounter.UNCOUNTABLE, PermutationCounter.count(positions));
+	}
+
+	private static String[][] positions(String... bets) {
+		final String[][] positions = new String[bets.length][];
+		for (int i = 0; i < bets.length; i++) {
+			positions[i] = bets[i].split("");
+		}
+		return positions;
+	}
+
+	private static String[][] randomPositions(Random random, int k, int maxItems, int valueCount) {
+		final String[][] positions = new String[k][];
+		for (int i = 0; i < k; i++) {
+			positions[i] = new String[1 + random.nextInt(maxItems)];
+			for (int j = 0; j < positions[i].length; j++) {
+				positions[i][j] = String.valueOf(VALUES.charAt(random.nextInt(valueCount)));
+			}
+		}
+		return positions;
+	}
+
+	/** 同 ValidateChain 原本以 {@link BetTree} 計算的方式 */
+	private static long betTreeCount(String[][] positions) {
+		final List<BetTree> roots = new ArrayList<>();
+		for (String root : positions[0]) {
+			roots.add(new BetTree(root));
+		}
+		for (int level = 1; level < positions.length; level++) {
+			for (BetTree root : roots) {
+				for (String item : positions[level]) {
+					root.addNode(level, item);
+				}
+			}
+		}
+		long count = 0;
+		for (BetTree root : roots) {
+			count += root.count(positions.length);
+		}
+		return count;
+	}
+
+}